@@ -0,0 +1,103 @@
+package com.crabscouter;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import okio.ByteString;
+
+// Deterministic, realistic-looking server payloads shared by the benchmarks
+final class BenchmarkPayloads
+{
+	static final int[] CHUNKS = {4913, 4911, 5424};
+
+	private BenchmarkPayloads()
+	{
+	}
+
+	// The same worlds for a given count, all with lastUpdate set to now
+	static String snapshotJson(int worlds, long seq, long now)
+	{
+		Random random = new Random(worlds);
+
+		JsonArray array = new JsonArray();
+		for (int i = 0; i < worlds; i++)
+		{
+			array.add(worldJson(WorldStore.MIN_WORLD + 1 + i, random, now));
+		}
+
+		JsonObject message = new JsonObject();
+		message.addProperty("type", "snapshot");
+		message.addProperty("seq", seq);
+		message.add("worlds", array);
+		return message.toString();
+	}
+
+	static String patchJson(int world, long seq, long now)
+	{
+		JsonArray upserts = new JsonArray();
+		upserts.add(worldJson(world, new Random(seq), now));
+
+		JsonObject message = new JsonObject();
+		message.addProperty("type", "patch");
+		message.addProperty("seq", seq);
+		message.add("upserts", upserts);
+		message.add("removes", new JsonArray());
+		return message.toString();
+	}
+
+	static ByteString deflated(String json)
+	{
+		return ByteString.of(CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_TEXT,
+			json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	static ByteString snapshotBinary(int worlds, long seq, long now)
+	{
+		Random random = new Random(worlds);
+		ByteBuffer buf = ByteBuffer.allocate(32 + worlds * 16);
+		buf.put((byte) CrabScouterBinaryProtocol.OP_SNAPSHOT);
+		CrabScouterBinaryProtocol.putVarint(buf, seq);
+		CrabScouterBinaryProtocol.putVarint(buf, now);
+		CrabScouterBinaryProtocol.putVarint(buf, worlds);
+		for (int i = 0; i < worlds; i++)
+		{
+			CrabScouterBinaryProtocol.putShort(buf, WorldStore.MIN_WORLD + 1 + i);
+			CrabScouterBinaryProtocol.putShort(buf, CHUNKS[random.nextInt(CHUNKS.length)]);
+			buf.put((byte) random.nextInt(101));
+			CrabScouterBinaryProtocol.putVarint(buf, random.nextInt(40));
+			CrabScouterBinaryProtocol.putVarint(buf, random.nextInt(20));
+			CrabScouterBinaryProtocol.putVarint(buf, random.nextInt(200));
+			CrabScouterBinaryProtocol.putVarint(buf, random.nextInt(60_000));
+		}
+		return ByteString.of(buf.array(), 0, buf.position());
+	}
+
+	static WorldBatch batch(int worlds)
+	{
+		Random random = new Random(worlds);
+		long now = System.currentTimeMillis();
+
+		WorldBatch batch = new WorldBatch();
+		for (int i = 0; i < worlds; i++)
+		{
+			batch.add(WorldStore.MIN_WORLD + 1 + i, CHUNKS[random.nextInt(CHUNKS.length)], random.nextInt(101),
+				random.nextInt(40), random.nextInt(20), random.nextInt(200), now - random.nextInt(60_000));
+		}
+		return batch;
+	}
+
+	private static JsonObject worldJson(int world, Random random, long now)
+	{
+		JsonObject json = new JsonObject();
+		json.addProperty("world", world);
+		json.addProperty("chunk", CHUNKS[random.nextInt(CHUNKS.length)]);
+		json.addProperty("health", random.nextInt(101));
+		json.addProperty("totalPlayers", random.nextInt(40));
+		json.addProperty("attackingPlayers", random.nextInt(20));
+		json.addProperty("damageRate", random.nextInt(200));
+		json.addProperty("lastUpdate", now - random.nextInt(60_000));
+		return json;
+	}
+}
@@ -0,0 +1,113 @@
+package com.crabscouter;
+
+import com.google.gson.Gson;
+import java.util.concurrent.TimeUnit;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Inbound path: decode a message and apply it to the world store. Every call changes the store: snapshot cases
+// alternate between two payloads whose worlds differ in lastUpdate, and patch cases walk a ring of patches with
+// consecutive seqs after a seeded snapshot. When the ring wraps the snapshot is applied again to reset the seq,
+// which adds one snapshot apply per PATCH_RING patches.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDecodeBenchmark
+{
+	private static final int PATCH_RING = 4096;
+
+	@Param({"50", "200", "500"})
+	public int worlds;
+
+	private CrabScouterWebSocketClient client;
+	private final String[] snapshotJson = new String[2];
+	private final ByteString[] snapshotBinary = new ByteString[2];
+	private final ByteString[] snapshotDeflated = new ByteString[2];
+	private int snapshotIndex;
+
+	private final String[] patchJson = new String[PATCH_RING];
+	private final ByteString[] patchDeflated = new ByteString[PATCH_RING];
+	private int patchIndex;
+
+	@Setup
+	public void setup()
+	{
+		CrabScouterPlugin plugin = new CrabScouterPlugin();
+		client = new CrabScouterWebSocketClient(plugin, "ws://localhost", null, new Gson(), null);
+
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 2; i++)
+		{
+			snapshotJson[i] = BenchmarkPayloads.snapshotJson(worlds, 1, now + i);
+			snapshotBinary[i] = BenchmarkPayloads.snapshotBinary(worlds, 1, now + i);
+			snapshotDeflated[i] = BenchmarkPayloads.deflated(snapshotJson[i]);
+		}
+		for (int i = 0; i < PATCH_RING; i++)
+		{
+			patchJson[i] = BenchmarkPayloads.patchJson(WorldStore.MIN_WORLD + 1 + i % worlds, i + 2, now + i);
+			patchDeflated[i] = BenchmarkPayloads.deflated(patchJson[i]);
+		}
+
+		// Patch cases need a snapshot at seq 1 to follow
+		client.onMessage(null, snapshotJson[0]);
+	}
+
+	@Benchmark
+	public void snapshotJson()
+	{
+		client.onMessage(null, snapshotJson[nextSnapshot()]);
+	}
+
+	@Benchmark
+	public void snapshotBinary()
+	{
+		client.onMessage(null, snapshotBinary[nextSnapshot()]);
+	}
+
+	@Benchmark
+	public void snapshotDeflated()
+	{
+		client.onMessage(null, snapshotDeflated[nextSnapshot()]);
+	}
+
+	@Benchmark
+	public void patchJson()
+	{
+		client.onMessage(null, patchJson[nextPatch()]);
+	}
+
+	@Benchmark
+	public void patchDeflated()
+	{
+		client.onMessage(null, patchDeflated[nextPatch()]);
+	}
+
+	private int nextSnapshot()
+	{
+		snapshotIndex ^= 1;
+		return snapshotIndex;
+	}
+
+	private int nextPatch()
+	{
+		if (patchIndex == PATCH_RING)
+		{
+			client.onMessage(null, snapshotJson[0]);
+			patchIndex = 0;
+		}
+		return patchIndex++;
+	}
+}
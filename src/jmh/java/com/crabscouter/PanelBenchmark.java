@@ -0,0 +1,73 @@
+package com.crabscouter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Panel sort and refresh in headless Swing. update() is called off the EDT here, which is fine for a
+// panel that is never shown.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PanelBenchmark
+{
+	@Param({"50", "200", "500"})
+	public int worlds;
+
+	@Param({"WORLD", "CHUNK", "HEALTH", "PLAYERS"})
+	public CrabScouterPanel.SortColumn column;
+
+	private CrabScouterPlugin plugin;
+	private CrabScouterPanel panel;
+	private WorldStore.Snapshot snapshot;
+	private WorldBatch alternate;
+	private WorldBatch batch;
+	private boolean flip;
+
+	@Setup
+	public void setup()
+	{
+		plugin = new CrabScouterPlugin();
+		batch = BenchmarkPayloads.batch(worlds);
+		alternate = BenchmarkPayloads.batch(worlds + 1);
+		plugin.onWorldsSnapshot(batch);
+
+		panel = new CrabScouterPanel(plugin);
+		panel.setSort(column, true);
+		panel.update();
+		snapshot = plugin.getWorldStore().snapshot();
+	}
+
+	@Benchmark
+	public List<WorldData> sort()
+	{
+		return panel.getSortedWorlds(snapshot);
+	}
+
+	@Benchmark
+	public void updateUnchanged()
+	{
+		panel.update();
+	}
+
+	@Benchmark
+	public void updateAllChanged()
+	{
+		flip = !flip;
+		plugin.onWorldsSnapshot(flip ? alternate : batch);
+		panel.update();
+	}
+}
@@ -0,0 +1,53 @@
+package com.crabscouter;
+
+import com.google.gson.Gson;
+import java.util.concurrent.TimeUnit;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Outbound report serialization in both wire formats
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportEncodeBenchmark
+{
+	private final Gson gson = new Gson();
+	private CrabScouterSender.Message report;
+
+	@Setup
+	public void setup()
+	{
+		report = new CrabScouterSender.Message();
+		report.type = CrabScouterSender.Type.REPORT;
+		report.world = 420;
+		report.chunk = 5424;
+		report.health = 73;
+		report.totalPlayers = 18;
+		report.attackingPlayers = 12;
+		report.damageRate = 85;
+	}
+
+	@Benchmark
+	public String json()
+	{
+		return gson.toJson(CrabScouterWebSocketClient.encodeJson(report));
+	}
+
+	@Benchmark
+	public ByteString binary()
+	{
+		return CrabScouterWebSocketClient.encodeBinary(report);
+	}
+}
@@ -0,0 +1,52 @@
+package com.crabscouter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark
+{
+	@Param({"50", "200", "500"})
+	public int worlds;
+
+	private WorldStore store;
+	private int health;
+
+	@Setup
+	public void setup()
+	{
+		store = new WorldStore();
+		store.upsertAll(BenchmarkPayloads.batch(worlds));
+		store.publish();
+	}
+
+	@Benchmark
+	public void upsertOneAndPublish()
+	{
+		health = (health + 1) % 101;
+		store.upsert(WorldStore.MIN_WORLD + 1, 4913, health, 10, 5, 0, 0);
+		store.publish();
+	}
+
+	@Benchmark
+	public List<WorldData> snapshotWorlds()
+	{
+		return store.snapshot().worlds();
+	}
+}
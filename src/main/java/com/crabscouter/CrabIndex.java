@@ -0,0 +1,89 @@
+package com.crabscouter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.runelite.api.NPC;
+import net.runelite.api.coords.WorldPoint;
+
+// Index of loaded target NPCs, kept up to date from NPC spawn and despawn events so finding the crab is a
+// lookup instead of a scan of every NPC. Whether an NPC id is a target by name is computed once per id, and
+// each target's region is captured at spawn since they don't move.
+public class CrabIndex
+{
+	private final TargetRegistry targets;
+	private final Map<Integer, Boolean> nameMatches = new HashMap<>();
+	private final Map<NPC, Integer> crabRegions = new LinkedHashMap<>();
+
+	public CrabIndex(TargetRegistry targets)
+	{
+		this.targets = targets;
+	}
+
+	public void clear()
+	{
+		crabRegions.clear();
+	}
+
+	public boolean add(NPC npc)
+	{
+		if (!isCrab(npc))
+		{
+			return false;
+		}
+
+		WorldPoint location = npc.getWorldLocation();
+		crabRegions.put(npc, location != null ? location.getRegionID() : -1);
+		return true;
+	}
+
+	public void remove(NPC npc)
+	{
+		crabRegions.remove(npc);
+	}
+
+	public NPC find(int region)
+	{
+		for (Map.Entry<NPC, Integer> entry : crabRegions.entrySet())
+		{
+			if (entry.getValue() == region)
+			{
+				return entry.getKey();
+			}
+		}
+		return null;
+	}
+
+	public int getRegion(NPC npc)
+	{
+		Integer region = crabRegions.get(npc);
+		return region != null ? region : -1;
+	}
+
+	public int size()
+	{
+		return crabRegions.size();
+	}
+
+	private boolean isCrab(NPC npc)
+	{
+		int id = npc.getId();
+		if (targets.isTargetId(id))
+		{
+			return true;
+		}
+
+		Boolean match = nameMatches.get(id);
+		if (match == null)
+		{
+			String name = npc.getName();
+			if (name == null)
+			{
+				return false;
+			}
+			match = targets.matchesName(name);
+			nameMatches.put(id, match);
+		}
+		return match;
+	}
+}
@@ -0,0 +1,158 @@
+package com.crabscouter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import okio.ByteString;
+
+// Compact binary framing, used once the server accepts the binary capability during the hello handshake.
+// Every frame starts with a one byte opcode. Worlds and chunk regions are unsigned shorts, health is an
+// unsigned byte and everything else is an unsigned LEB128 varint. A world record is usually 11 bytes:
+// world, chunk, health, total, attacking, damage rate and the record's age in milliseconds relative to the
+// frame time.
+public final class CrabScouterBinaryProtocol
+{
+	public static final String CAPABILITY = "binary-v2";
+
+	// Client to server
+	static final int OP_JOIN = 0x01;
+	static final int OP_LEAVE = 0x02;
+	static final int OP_REPORT = 0x03;
+	static final int OP_RESIGN = 0x04;
+	static final int OP_RESYNC = 0x05;
+	static final int OP_SUBSCRIBE = 0x06;
+
+	// Server to client
+	static final int OP_ROLE = 0x10;
+	static final int OP_SNAPSHOT = 0x11;
+	static final int OP_PATCH = 0x12;
+
+	// Server to client, see CrabScouterCompression
+	static final int OP_DEFLATED_TEXT = 0x20;
+	static final int OP_DEFLATED_BINARY = 0x21;
+
+	private static final int MAX_CLIENT_FRAME = 32;
+
+	private CrabScouterBinaryProtocol()
+	{
+	}
+
+	public static ByteString encodeJoin(int world, int chunk)
+	{
+		ByteBuffer buf = allocate();
+		buf.put((byte) OP_JOIN);
+		putShort(buf, world);
+		putShort(buf, chunk);
+		return toByteString(buf);
+	}
+
+	public static ByteString encodeLeave(int world)
+	{
+		ByteBuffer buf = allocate();
+		buf.put((byte) OP_LEAVE);
+		putShort(buf, world);
+		return toByteString(buf);
+	}
+
+	public static ByteString encodeReport(int world, int chunk, int health, int totalPlayers, int attackingPlayers,
+		int damageRate)
+	{
+		ByteBuffer buf = allocate();
+		buf.put((byte) OP_REPORT);
+		putShort(buf, world);
+		putShort(buf, chunk);
+		buf.put((byte) Math.max(0, Math.min(255, health)));
+		putVarint(buf, Math.max(0, totalPlayers));
+		putVarint(buf, Math.max(0, attackingPlayers));
+		putVarint(buf, Math.max(0, damageRate));
+		return toByteString(buf);
+	}
+
+	public static ByteString encodeResign(int world)
+	{
+		ByteBuffer buf = allocate();
+		buf.put((byte) OP_RESIGN);
+		putShort(buf, world);
+		return toByteString(buf);
+	}
+
+	public static ByteString encodeResync(long seq)
+	{
+		ByteBuffer buf = allocate();
+		buf.put((byte) OP_RESYNC);
+		putVarint(buf, Math.max(0, seq));
+		return toByteString(buf);
+	}
+
+	// Chunks and worlds as counted lists of shorts, then the player cap as a varint and the health floor
+	public static ByteString encodeSubscribe(WorldFilter filter)
+	{
+		int[] chunks = filter.getChunks();
+		int[] worlds = filter.getWorlds();
+		ByteBuffer buf = ByteBuffer.allocate(MAX_CLIENT_FRAME + 2 * (chunks.length + worlds.length))
+			.order(ByteOrder.BIG_ENDIAN);
+		buf.put((byte) OP_SUBSCRIBE);
+		putVarint(buf, chunks.length);
+		for (int chunk : chunks)
+		{
+			putShort(buf, chunk);
+		}
+		putVarint(buf, worlds.length);
+		for (int world : worlds)
+		{
+			putShort(buf, world);
+		}
+		putVarint(buf, filter.getMaxPlayers());
+		buf.put((byte) Math.min(255, filter.getMinHealth()));
+		return toByteString(buf);
+	}
+
+	static int getShort(ByteBuffer buf)
+	{
+		return buf.getShort() & 0xFFFF;
+	}
+
+	static void putShort(ByteBuffer buf, int value)
+	{
+		buf.putShort((short) value);
+	}
+
+	static long getVarint(ByteBuffer buf)
+	{
+		long value = 0;
+		int shift = 0;
+		while (true)
+		{
+			byte b = buf.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+			shift += 7;
+			if (shift > 63)
+			{
+				throw new IllegalArgumentException("Varint too long");
+			}
+		}
+	}
+
+	static void putVarint(ByteBuffer buf, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	private static ByteBuffer allocate()
+	{
+		return ByteBuffer.allocate(MAX_CLIENT_FRAME).order(ByteOrder.BIG_ENDIAN);
+	}
+
+	private static ByteString toByteString(ByteBuffer buf)
+	{
+		return ByteString.of(buf.array(), 0, buf.position());
+	}
+}
@@ -0,0 +1,96 @@
+package com.crabscouter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Application-level deflate for server broadcasts, used once the server accepts the deflate capability during
+// the hello handshake. A compressed frame is a binary message of one opcode byte (deflated JSON text or a
+// deflated binary frame) followed by a zlib stream compressed against DICTIONARY. The dictionary holds the
+// schema's field names and common values, so even a one-world patch compresses well. Instances hold a reusable
+// Inflater and output buffer and are not thread safe.
+public class CrabScouterCompression
+{
+	public static final String CAPABILITY = "deflate-v1";
+
+	// Limits what a hostile or broken frame can make us allocate
+	private static final int MAX_INFLATED_SIZE = 4 * 1024 * 1024;
+
+	// Most useful strings last: zlib prefers the closest match
+	static final byte[] DICTIONARY = (
+		"{\"type\":\"welcome\",\"capabilities\":[]}"
+			+ "{\"type\":\"role\",\"isReporter\":false}{\"type\":\"role\",\"isReporter\":true}"
+			+ "{\"type\":\"update\",\"worlds\":[]}"
+			+ "{\"type\":\"snapshot\",\"seq\":,\"worlds\":[]}"
+			+ ",\"removes\":[]}{\"type\":\"patch\",\"seq\":,\"upserts\":["
+			+ "{\"world\":4,\"chunk\":4911,\"health\":100,\"totalPlayers\":0,\"attackingPlayers\":0,\"damageRate\":0,"
+			+ "\"lastUpdate\":17}"
+			+ "{\"world\":5,\"chunk\":5424,\"health\":,\"totalPlayers\":,\"attackingPlayers\":,\"damageRate\":,"
+			+ "\"lastUpdate\":17}"
+			+ ",{\"world\":3,\"chunk\":4913,\"health\":,\"totalPlayers\":,\"attackingPlayers\":,\"damageRate\":,"
+			+ "\"lastUpdate\":17"
+	).getBytes(StandardCharsets.UTF_8);
+
+	private final Inflater inflater = new Inflater();
+	private byte[] output = new byte[16 * 1024];
+
+	// Inflates the zlib stream in the rest of the buffer. The result is only valid until the next call.
+	public ByteBuffer inflate(ByteBuffer input) throws DataFormatException
+	{
+		inflater.reset();
+		inflater.setInput(input);
+
+		int size = 0;
+		while (!inflater.finished())
+		{
+			if (size == output.length)
+			{
+				if (output.length >= MAX_INFLATED_SIZE)
+				{
+					throw new DataFormatException("Inflated frame larger than " + MAX_INFLATED_SIZE + " bytes");
+				}
+				output = Arrays.copyOf(output, output.length * 2);
+			}
+
+			int n = inflater.inflate(output, size, output.length - size);
+			if (n == 0)
+			{
+				if (inflater.needsDictionary())
+				{
+					inflater.setDictionary(DICTIONARY);
+				}
+				else if (inflater.needsInput())
+				{
+					throw new DataFormatException("Truncated compressed frame");
+				}
+			}
+			size += n;
+		}
+
+		return ByteBuffer.wrap(output, 0, size);
+	}
+
+	// Builds a compressed frame; used by servers and the test tooling
+	public static byte[] deflate(int opcode, byte[] payload)
+	{
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		deflater.setDictionary(DICTIONARY);
+		deflater.setInput(payload);
+		deflater.finish();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4 + 16);
+		out.write(opcode);
+		byte[] buf = new byte[4096];
+		while (!deflater.finished())
+		{
+			int n = deflater.deflate(buf);
+			out.write(buf, 0, n);
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+}
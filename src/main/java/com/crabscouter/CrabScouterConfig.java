@@ -0,0 +1,141 @@
+package com.crabscouter;
+
+import net.runelite.client.config.Config;
+import net.runelite.client.config.ConfigGroup;
+import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.ConfigSection;
+import net.runelite.client.config.Range;
+
+@ConfigGroup(CrabScouterConfig.GROUP)
+public interface CrabScouterConfig extends Config
+{
+	String GROUP = "crabscouter";
+
+	@Range(
+		min = 1,
+		max = 30
+	)
+	@ConfigItem(
+		keyName = "refreshRate",
+		name = "Panel refresh rate",
+		description = "Maximum number of times per second the world list is redrawn",
+		position = 0
+	)
+	default int refreshRate()
+	{
+		return 4;
+	}
+
+	@ConfigSection(
+		name = "Best world",
+		description = "How the best world to hop to is chosen",
+		position = 1
+	)
+	String recommendSection = "recommend";
+
+	@Range(
+		max = 100
+	)
+	@ConfigItem(
+		keyName = "healthWeight",
+		name = "Health weight",
+		description = "How much crab health remaining counts towards a world's score",
+		position = 2,
+		section = recommendSection
+	)
+	default int healthWeight()
+	{
+		return 50;
+	}
+
+	@Range(
+		max = 100
+	)
+	@ConfigItem(
+		keyName = "playersWeight",
+		name = "Players weight",
+		description = "How much few players attacking the crab counts towards a world's score",
+		position = 3,
+		section = recommendSection
+	)
+	default int playersWeight()
+	{
+		return 30;
+	}
+
+	@Range(
+		max = 100
+	)
+	@ConfigItem(
+		keyName = "freshnessWeight",
+		name = "Freshness weight",
+		description = "How much recently updated data counts towards a world's score",
+		position = 4,
+		section = recommendSection
+	)
+	default int freshnessWeight()
+	{
+		return 20;
+	}
+
+	@ConfigSection(
+		name = "Filter",
+		description = "Which worlds are shown; the server only sends these when it supports filtering",
+		position = 5
+	)
+	String filterSection = "filter";
+
+	@ConfigItem(
+		keyName = "chunkFilter",
+		name = "Chunks",
+		description = "Comma separated chunks to show, e.g. East, North. Empty shows every chunk",
+		position = 6,
+		section = filterSection
+	)
+	default String chunkFilter()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+		keyName = "worldFilter",
+		name = "Worlds",
+		description = "Comma separated worlds to show. Empty shows every world",
+		position = 7,
+		section = filterSection
+	)
+	default String worldFilter()
+	{
+		return "";
+	}
+
+	@Range(
+		max = 2000
+	)
+	@ConfigItem(
+		keyName = "maxPlayers",
+		name = "Max players",
+		description = "Hide worlds with more players at the crab than this. 0 shows any number",
+		position = 8,
+		section = filterSection
+	)
+	default int maxPlayers()
+	{
+		return 0;
+	}
+
+	@Range(
+		max = 100
+	)
+	@ConfigItem(
+		keyName = "minHealth",
+		name = "Min health",
+		description = "Hide worlds whose crab has less health left than this percentage",
+		position = 9,
+		section = filterSection
+	)
+	default int minHealth()
+	{
+		return 0;
+	}
+}
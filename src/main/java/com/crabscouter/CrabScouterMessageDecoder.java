@@ -0,0 +1,291 @@
+package com.crabscouter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class CrabScouterMessageDecoder
+{
+	// Fields of the last decoded message; the decoder is reused and is not thread safe
+	@Getter
+	private String type;
+
+	@Getter
+	private long seq;
+
+	@Getter
+	private boolean reporter;
+
+	@Getter
+	private final WorldBatch worlds = new WorldBatch();
+
+	@Getter
+	private Set<String> capabilities;
+
+	// Size of the last message after inflating, or 0 if it wasn't compressed
+	@Getter
+	private int inflatedSize;
+
+	private final CrabScouterCompression compression = new CrabScouterCompression();
+
+	private int[] removes = new int[16];
+	private int removeCount;
+
+	public void decode(String text) throws IOException
+	{
+		decode(new StringReader(text));
+	}
+
+	private void decode(Reader in) throws IOException
+	{
+		reset();
+
+		try (JsonReader reader = new JsonReader(in))
+		{
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				switch (reader.nextName())
+				{
+					case "type":
+						type = reader.nextString();
+						break;
+					case "seq":
+						seq = reader.nextLong();
+						break;
+					case "isReporter":
+						reporter = reader.nextBoolean();
+						break;
+					case "worlds":
+					case "upserts":
+						readWorlds(reader);
+						break;
+					case "removes":
+						readRemoves(reader);
+						break;
+					case "capabilities":
+						readCapabilities(reader);
+						break;
+					default:
+						reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+	}
+
+	public void decode(ByteBuffer buf) throws IOException
+	{
+		int opcode = buf.get() & 0xFF;
+		if (opcode == CrabScouterBinaryProtocol.OP_DEFLATED_TEXT || opcode == CrabScouterBinaryProtocol.OP_DEFLATED_BINARY)
+		{
+			decodeDeflated(opcode, buf);
+			return;
+		}
+
+		reset();
+		switch (opcode)
+		{
+			case CrabScouterBinaryProtocol.OP_ROLE:
+				type = "role";
+				reporter = buf.get() != 0;
+				break;
+
+			case CrabScouterBinaryProtocol.OP_SNAPSHOT:
+			case CrabScouterBinaryProtocol.OP_PATCH:
+			{
+				type = opcode == CrabScouterBinaryProtocol.OP_SNAPSHOT ? "snapshot" : "patch";
+				seq = CrabScouterBinaryProtocol.getVarint(buf);
+				long baseTime = CrabScouterBinaryProtocol.getVarint(buf);
+
+				int count = (int) CrabScouterBinaryProtocol.getVarint(buf);
+				for (int i = 0; i < count; i++)
+				{
+					worlds.add(
+						CrabScouterBinaryProtocol.getShort(buf),
+						CrabScouterBinaryProtocol.getShort(buf),
+						buf.get() & 0xFF,
+						(int) CrabScouterBinaryProtocol.getVarint(buf),
+						(int) CrabScouterBinaryProtocol.getVarint(buf),
+						(int) CrabScouterBinaryProtocol.getVarint(buf),
+						baseTime - CrabScouterBinaryProtocol.getVarint(buf)
+					);
+				}
+
+				if (opcode == CrabScouterBinaryProtocol.OP_PATCH)
+				{
+					int removeTotal = (int) CrabScouterBinaryProtocol.getVarint(buf);
+					for (int i = 0; i < removeTotal; i++)
+					{
+						addRemove(CrabScouterBinaryProtocol.getShort(buf));
+					}
+				}
+				break;
+			}
+
+			default:
+				log.warn("Unknown binary opcode: {}", opcode);
+		}
+	}
+
+	private void decodeDeflated(int opcode, ByteBuffer buf) throws IOException
+	{
+		ByteBuffer inflated;
+		try
+		{
+			inflated = compression.inflate(buf);
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Bad compressed frame", e);
+		}
+
+		int size = inflated.remaining();
+		if (opcode == CrabScouterBinaryProtocol.OP_DEFLATED_TEXT)
+		{
+			decode(new InputStreamReader(
+				new ByteArrayInputStream(inflated.array(), inflated.position(), size), StandardCharsets.UTF_8));
+		}
+		else
+		{
+			int inner = inflated.get(inflated.position()) & 0xFF;
+			if (inner == CrabScouterBinaryProtocol.OP_DEFLATED_TEXT || inner == CrabScouterBinaryProtocol.OP_DEFLATED_BINARY)
+			{
+				throw new IOException("Nested compressed frame");
+			}
+			decode(inflated);
+		}
+		inflatedSize = size;
+	}
+
+	public int[] getRemoves()
+	{
+		return Arrays.copyOf(removes, removeCount);
+	}
+
+	private void reset()
+	{
+		type = null;
+		seq = -1;
+		reporter = false;
+		worlds.clear();
+		capabilities = Collections.emptySet();
+		removeCount = 0;
+		inflatedSize = 0;
+	}
+
+	private void readWorlds(JsonReader reader) throws IOException
+	{
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			readWorld(reader);
+		}
+		reader.endArray();
+	}
+
+	private void readWorld(JsonReader reader) throws IOException
+	{
+		int world = -1;
+		int chunk = -1;
+		int health = 100;
+		int totalPlayers = 0;
+		int attackingPlayers = 0;
+		int damageRate = 0;
+		long lastUpdate = 0;
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.NULL)
+			{
+				reader.skipValue();
+				continue;
+			}
+
+			switch (name)
+			{
+				case "world":
+					world = reader.nextInt();
+					break;
+				case "chunk":
+					chunk = reader.nextInt();
+					break;
+				case "health":
+					health = reader.nextInt();
+					break;
+				case "totalPlayers":
+					totalPlayers = reader.nextInt();
+					break;
+				case "attackingPlayers":
+					attackingPlayers = reader.nextInt();
+					break;
+				case "damageRate":
+					damageRate = reader.nextInt();
+					break;
+				case "lastUpdate":
+					lastUpdate = reader.nextLong();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (world == -1)
+		{
+			log.warn("Skipping world record without a world number");
+			return;
+		}
+
+		worlds.add(world, chunk, health, totalPlayers, attackingPlayers, damageRate, lastUpdate);
+	}
+
+	private void readRemoves(JsonReader reader) throws IOException
+	{
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			addRemove(reader.nextInt());
+		}
+		reader.endArray();
+	}
+
+	private void addRemove(int world)
+	{
+		if (removeCount == removes.length)
+		{
+			removes = Arrays.copyOf(removes, removeCount * 2);
+		}
+		removes[removeCount++] = world;
+	}
+
+	private void readCapabilities(JsonReader reader) throws IOException
+	{
+		Set<String> result = new HashSet<>();
+
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			result.add(reader.nextString());
+		}
+		reader.endArray();
+
+		capabilities = result;
+	}
+}
@@ -0,0 +1,159 @@
+package com.crabscouter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import net.runelite.client.RuneLite;
+
+// Counters and histograms describing what the plugin costs. Timings are recorded in nanoseconds.
+public class CrabScouterMetrics
+{
+	private static final File EXPORT_DIR = new File(RuneLite.RUNELITE_DIR, "crab-scouter");
+
+	public final Histogram gameTick = new Histogram();
+	public final Histogram checkAndReport = new Histogram();
+	public final Histogram messageParse = new Histogram();
+	public final Histogram messageSize = new Histogram();
+	public final Histogram panelUpdate = new Histogram();
+	// From the row double-click to the HOPPING game state
+	public final Histogram hopLatency = new Histogram();
+
+	public final LongAdder messagesIn = new LongAdder();
+	public final LongAdder messagesOut = new LongAdder();
+	public final LongAdder bytesIn = new LongAdder();
+	// Compressed frames only: bytes on the wire and what they inflated to
+	public final LongAdder compressedBytesIn = new LongAdder();
+	public final LongAdder inflatedBytesIn = new LongAdder();
+	public final LongAdder reconnects = new LongAdder();
+
+	private final long startNanos = System.nanoTime();
+
+	// Previous sample for the per-second rates, only used by describe()
+	private long rateSampleNanos = startNanos;
+	private long rateSampleIn;
+	private long rateSampleOut;
+	private double inPerSecond;
+	private double outPerSecond;
+
+	public Map<String, Histogram> getTimings()
+	{
+		Map<String, Histogram> timings = new LinkedHashMap<>();
+		timings.put("Game tick", gameTick);
+		timings.put("Report check", checkAndReport);
+		timings.put("Message parse", messageParse);
+		timings.put("Panel update", panelUpdate);
+		return timings;
+	}
+
+	public synchronized String describe()
+	{
+		sampleRates();
+
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Histogram> entry : getTimings().entrySet())
+		{
+			Histogram h = entry.getValue();
+			sb.append(entry.getKey())
+				.append(": p50 ").append(formatMicros(h.getPercentile(50)))
+				.append(" p99 ").append(formatMicros(h.getPercentile(99)))
+				.append(" max ").append(formatMicros(h.getMax()))
+				.append('\n');
+		}
+		if (hopLatency.getCount() > 0)
+		{
+			sb.append("Hop latency: p50 ").append(TimeUnit.NANOSECONDS.toMillis(hopLatency.getPercentile(50)))
+				.append(" ms, max ").append(TimeUnit.NANOSECONDS.toMillis(hopLatency.getMax())).append(" ms\n");
+		}
+		sb.append("Message size: p50 ").append(messageSize.getPercentile(50))
+			.append(" B, max ").append(messageSize.getMax()).append(" B\n");
+		long compressed = compressedBytesIn.sum();
+		if (compressed > 0)
+		{
+			long inflated = inflatedBytesIn.sum();
+			sb.append(String.format("Compression: %.1f KB from %.1f KB (%.1fx)%n",
+				compressed / 1024.0, inflated / 1024.0, inflated / (double) compressed));
+		}
+		sb.append(String.format("Messages in: %d (%.1f/s)%n", messagesIn.sum(), inPerSecond));
+		sb.append(String.format("Messages out: %d (%.1f/s)%n", messagesOut.sum(), outPerSecond));
+		sb.append("Reconnects: ").append(reconnects.sum());
+		return sb.toString();
+	}
+
+	public File export(Gson gson) throws IOException
+	{
+		JsonObject json = new JsonObject();
+		json.addProperty("timestamp", System.currentTimeMillis());
+		json.addProperty("uptimeSeconds", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+
+		JsonObject timings = new JsonObject();
+		for (Map.Entry<String, Histogram> entry : getTimings().entrySet())
+		{
+			timings.add(entry.getKey(), toJson(entry.getValue()));
+		}
+		json.add("timingsNanos", timings);
+		json.add("messageSizeBytes", toJson(messageSize));
+		json.add("hopLatencyNanos", toJson(hopLatency));
+
+		json.addProperty("messagesIn", messagesIn.sum());
+		json.addProperty("messagesOut", messagesOut.sum());
+		json.addProperty("bytesIn", bytesIn.sum());
+		json.addProperty("compressedBytesIn", compressedBytesIn.sum());
+		json.addProperty("inflatedBytesIn", inflatedBytesIn.sum());
+		json.addProperty("reconnects", reconnects.sum());
+
+		EXPORT_DIR.mkdirs();
+		String name = "diagnostics-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+		File file = new File(EXPORT_DIR, name);
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+		{
+			gson.toJson(json, writer);
+		}
+		return file;
+	}
+
+	private void sampleRates()
+	{
+		long now = System.nanoTime();
+		long elapsed = now - rateSampleNanos;
+		if (elapsed < TimeUnit.MILLISECONDS.toNanos(500))
+		{
+			return;
+		}
+
+		long in = messagesIn.sum();
+		long out = messagesOut.sum();
+		double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+		inPerSecond = (in - rateSampleIn) / seconds;
+		outPerSecond = (out - rateSampleOut) / seconds;
+		rateSampleNanos = now;
+		rateSampleIn = in;
+		rateSampleOut = out;
+	}
+
+	private static JsonObject toJson(Histogram h)
+	{
+		JsonObject json = new JsonObject();
+		json.addProperty("count", h.getCount());
+		json.addProperty("mean", h.getMean());
+		json.addProperty("p50", h.getPercentile(50));
+		json.addProperty("p90", h.getPercentile(90));
+		json.addProperty("p99", h.getPercentile(99));
+		json.addProperty("max", h.getMax());
+		return json;
+	}
+
+	private static String formatMicros(long nanos)
+	{
+		return String.format("%.0fµs", nanos / 1000.0);
+	}
+}
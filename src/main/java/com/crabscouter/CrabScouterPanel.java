@@ -9,24 +9,46 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
+import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.FontManager;
 import net.runelite.client.ui.PluginPanel;
 
+@Slf4j
 public class CrabScouterPanel extends PluginPanel
 {
-	private enum SortColumn
+	private static final int DIAGNOSTICS_REFRESH_MILLIS = 1000;
+
+	enum SortColumn
 	{
-		WORLD, CHUNK, HEALTH, PLAYERS
+		WORLD(WorldStore.Order.WORLD),
+		CHUNK(WorldStore.Order.CHUNK),
+		HEALTH(WorldStore.Order.HEALTH),
+		PLAYERS(WorldStore.Order.PLAYERS);
+
+		private final WorldStore.Order order;
+
+		SortColumn(WorldStore.Order order)
+		{
+			this.order = order;
+		}
 	}
 
 	private final CrabScouterPlugin plugin;
@@ -35,6 +57,17 @@ public class CrabScouterPanel extends PluginPanel
 	private final JLabel roleLabel;
 	private final JLabel connectionIndicator;
 	private final JLabel[] headerLabels = new JLabel[4];
+	private final JLabel messageLabel;
+	private final JButton bestWorldButton;
+	private int bestWorld = -1;
+	private final JLabel diagnosticsToggle;
+	private final JPanel diagnosticsBody;
+	private final JTextArea diagnosticsText;
+	private final Timer diagnosticsTimer;
+
+	// Rows are kept per world and reused across updates; only changed labels are touched
+	private final Map<Integer, WorldRow> rows = new HashMap<>();
+	private boolean showingMessage = false;
 
 	private SortColumn sortColumn = SortColumn.WORLD;
 	private boolean sortAscending = true;
@@ -68,6 +101,17 @@ public class CrabScouterPanel extends PluginPanel
 
 		headerPanel.add(titleRow, BorderLayout.NORTH);
 
+		bestWorldButton = new JButton();
+		bestWorldButton.setFont(FontManager.getRunescapeSmallFont());
+		bestWorldButton.setFocusPainted(false);
+		bestWorldButton.addActionListener(e -> plugin.hopToBestWorld());
+
+		JPanel bestWorldRow = new JPanel(new BorderLayout());
+		bestWorldRow.setBackground(ColorScheme.DARK_GRAY_COLOR);
+		bestWorldRow.setBorder(new EmptyBorder(0, 0, 8, 0));
+		bestWorldRow.add(bestWorldButton, BorderLayout.CENTER);
+		headerPanel.add(bestWorldRow, BorderLayout.CENTER);
+
 		JPanel columnHeaders = createHeaderRow();
 		headerPanel.add(columnHeaders, BorderLayout.SOUTH);
 
@@ -77,6 +121,10 @@ public class CrabScouterPanel extends PluginPanel
 		worldListPanel.setLayout(new BoxLayout(worldListPanel, BoxLayout.Y_AXIS));
 		worldListPanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
 
+		messageLabel = new JLabel();
+		messageLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+		messageLabel.setAlignmentX(CENTER_ALIGNMENT);
+
 		JScrollPane scrollPane = new JScrollPane(worldListPanel);
 		scrollPane.setBackground(ColorScheme.DARK_GRAY_COLOR);
 		scrollPane.setBorder(BorderFactory.createEmptyBorder());
@@ -96,7 +144,51 @@ public class CrabScouterPanel extends PluginPanel
 		roleLabel = new JLabel("");
 		roleLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
 		roleLabel.setFont(FontManager.getRunescapeSmallFont());
-		footerPanel.add(roleLabel, BorderLayout.SOUTH);
+
+		diagnosticsToggle = new JLabel();
+		diagnosticsToggle.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+		diagnosticsToggle.setFont(FontManager.getRunescapeSmallFont());
+		diagnosticsToggle.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		diagnosticsToggle.setBorder(new EmptyBorder(6, 0, 0, 0));
+		diagnosticsToggle.addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				setDiagnosticsVisible(!diagnosticsBody.isVisible());
+			}
+		});
+
+		diagnosticsText = new JTextArea();
+		diagnosticsText.setEditable(false);
+		diagnosticsText.setLineWrap(true);
+		diagnosticsText.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+		diagnosticsText.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+		diagnosticsText.setFont(FontManager.getRunescapeSmallFont());
+		diagnosticsText.setBorder(new EmptyBorder(4, 5, 4, 5));
+
+		JButton exportButton = new JButton("Export snapshot");
+		exportButton.setFont(FontManager.getRunescapeSmallFont());
+		exportButton.addActionListener(e -> exportDiagnostics());
+
+		diagnosticsBody = new JPanel(new BorderLayout(0, 4));
+		diagnosticsBody.setBackground(ColorScheme.DARK_GRAY_COLOR);
+		diagnosticsBody.add(diagnosticsText, BorderLayout.CENTER);
+		diagnosticsBody.add(exportButton, BorderLayout.SOUTH);
+
+		diagnosticsTimer = new Timer(DIAGNOSTICS_REFRESH_MILLIS, e -> updateDiagnostics());
+
+		JPanel diagnosticsPanel = new JPanel(new BorderLayout());
+		diagnosticsPanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
+		diagnosticsPanel.add(diagnosticsToggle, BorderLayout.NORTH);
+		diagnosticsPanel.add(diagnosticsBody, BorderLayout.CENTER);
+		setDiagnosticsVisible(false);
+
+		JPanel footerSouth = new JPanel(new BorderLayout());
+		footerSouth.setBackground(ColorScheme.DARK_GRAY_COLOR);
+		footerSouth.add(roleLabel, BorderLayout.NORTH);
+		footerSouth.add(diagnosticsPanel, BorderLayout.SOUTH);
+		footerPanel.add(footerSouth, BorderLayout.SOUTH);
 
 		add(footerPanel, BorderLayout.SOUTH);
 
@@ -192,87 +284,69 @@ public class CrabScouterPanel extends PluginPanel
 		}
 	}
 
-	private List<WorldData> getSortedWorlds(List<WorldData> worlds)
+	void setSort(SortColumn column, boolean ascending)
 	{
-		List<WorldData> sorted = new ArrayList<>();
-		for (WorldData data : worlds)
-		{
-			if (data.isFresh())
-			{
-				sorted.add(data);
-			}
-		}
+		sortColumn = column;
+		sortAscending = ascending;
+		updateHeaderLabels();
+	}
 
-		Comparator<WorldData> comparator;
-		switch (sortColumn)
-		{
-			case CHUNK:
-				comparator = Comparator.comparing(WorldData::getChunkName);
-				break;
-			case HEALTH:
-				comparator = Comparator.comparingInt(WorldData::getHealth);
-				break;
-			case PLAYERS:
-				comparator = Comparator.comparingInt(WorldData::getTotalPlayers);
-				break;
-			case WORLD:
-			default:
-				comparator = Comparator.comparingInt(WorldData::getWorld);
-				break;
-		}
+	// The store keeps every column's order up to date, so this is a walk over an index rather than a sort.
+	// Extrapolated health moves with the clock, so the order is taken as of each repaint, not cached.
+	List<WorldData> getSortedWorlds(WorldStore.Snapshot snapshot)
+	{
+		List<WorldData> sorted = snapshot.freshWorlds(sortColumn.order, sortAscending, System.currentTimeMillis());
 
-		if (!sortAscending)
+		// Usually a no-op: servers that filter only send matching worlds
+		WorldFilter filter = plugin.getWorldFilter();
+		if (!filter.isAll())
 		{
-			comparator = comparator.reversed();
+			sorted.removeIf(data -> !filter.matches(data));
 		}
-
-		sorted.sort(comparator);
 		return sorted;
 	}
 
 	public void update()
 	{
-		worldListPanel.removeAll();
+		long start = System.nanoTime();
+		updateConnectionIndicator();
 
-		boolean connected = plugin.isConnected();
-		connectionIndicator.setForeground(connected ? Color.GREEN : Color.RED);
-		connectionIndicator.setToolTipText(connected ? "Connected" : "Disconnected");
+		WorldStore.Snapshot snapshot = plugin.getWorldStore().snapshot();
+		List<WorldData> sortedWorlds = getSortedWorlds(snapshot);
 
-		List<WorldData> worlds = plugin.getWorldDataList();
-		List<WorldData> sortedWorlds = getSortedWorlds(worlds);
-
-		if (worlds.isEmpty())
+		boolean structureChanged;
+		if (snapshot.isEmpty())
 		{
-			JLabel emptyLabel = new JLabel("No crab data available");
-			emptyLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-			emptyLabel.setAlignmentX(CENTER_ALIGNMENT);
-			worldListPanel.add(Box.createVerticalGlue());
-			worldListPanel.add(emptyLabel);
-			worldListPanel.add(Box.createVerticalGlue());
+			structureChanged = showMessage("No crab data available");
 		}
 		else if (sortedWorlds.isEmpty())
 		{
-			JLabel staleLabel = new JLabel("All data stale");
-			staleLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-			staleLabel.setAlignmentX(CENTER_ALIGNMENT);
-			worldListPanel.add(Box.createVerticalGlue());
-			worldListPanel.add(staleLabel);
-			worldListPanel.add(Box.createVerticalGlue());
+			structureChanged = showMessage(plugin.getWorldFilter().isAll() ? "All data stale" : "No worlds match the filter");
 		}
 		else
 		{
-			for (WorldData data : sortedWorlds)
+			structureChanged = showRows(sortedWorlds);
+		}
+
+		int scoutCount = snapshot.size();
+		int restoredCount = 0;
+		for (WorldData data : sortedWorlds)
+		{
+			if (data.isRestored())
 			{
-				worldListPanel.add(createWorldRow(data));
+				restoredCount++;
 			}
 		}
 
-		int scoutCount = worlds.size();
 		StringBuilder status = new StringBuilder();
 		if (scoutCount == 0)
 		{
 			status.append("No worlds are reporting data");
 		}
+		else if (restoredCount == scoutCount)
+		{
+			status.append("Showing last known worlds until the server answers");
+		}
 		else
 		{
 			status.append(scoutCount)
@@ -280,64 +354,264 @@ public class CrabScouterPanel extends PluginPanel
 				.append(" reporting data");
 		}
 		statusLabel.setText(status.toString());
-		roleLabel.setText(plugin.isReporter() ? "You are reporting for your world." : "");	
+		roleLabel.setText(plugin.isReporter() ? "You are reporting for your world." : "");
+		updateBestWorldButton();
+
+		if (structureChanged)
+		{
+			worldListPanel.revalidate();
+			worldListPanel.repaint();
+		}
+
+		plugin.getMetrics().panelUpdate.record(System.nanoTime() - start);
+	}
+
+	private void updateBestWorldButton()
+	{
+		int best = plugin.getBestWorld();
+		if (best == bestWorld && bestWorldButton.getText().length() > 0)
+		{
+			return;
+		}
+
+		bestWorld = best;
+		bestWorldButton.setEnabled(best != -1);
+		bestWorldButton.setText(best != -1 ? "Hop to best world (" + best + ")" : "No world to recommend");
+	}
+
+	public void shutdown()
+	{
+		diagnosticsTimer.stop();
+	}
+
+	private void setDiagnosticsVisible(boolean visible)
+	{
+		diagnosticsToggle.setText((visible ? "▼" : "▶") + " Diagnostics");
+		diagnosticsBody.setVisible(visible);
+
+		if (visible)
+		{
+			updateDiagnostics();
+			diagnosticsTimer.start();
+		}
+		else
+		{
+			diagnosticsTimer.stop();
+		}
 
 		revalidate();
-		repaint();
 	}
 
-	private JPanel createWorldRow(WorldData data)
+	private void updateDiagnostics()
 	{
-		JPanel row = new JPanel(new GridLayout(1, 4, 5, 0));
-		row.setBackground(ColorScheme.DARKER_GRAY_COLOR);
-		row.setBorder(new EmptyBorder(4, 5, 4, 5));
-		row.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-		row.setMaximumSize(new Dimension(Integer.MAX_VALUE, 24));
+		diagnosticsText.setText(plugin.getMetrics().describe());
+	}
 
-		JLabel worldLabel = new JLabel(String.valueOf(data.getWorld()), SwingConstants.CENTER);
-		worldLabel.setForeground(Color.WHITE);
+	private void exportDiagnostics()
+	{
+		try
+		{
+			File file = plugin.exportMetrics();
+			JOptionPane.showMessageDialog(this, "Diagnostics saved to " + file.getAbsolutePath(),
+				"Crab Scouter", JOptionPane.INFORMATION_MESSAGE);
+		}
+		catch (IOException ex)
+		{
+			log.warn("Failed to export diagnostics", ex);
+			JOptionPane.showMessageDialog(this, "Failed to export diagnostics: " + ex.getMessage(),
+				"Crab Scouter", JOptionPane.ERROR_MESSAGE);
+		}
+	}
 
-		JLabel chunkLabel = new JLabel(data.getChunkName(), SwingConstants.CENTER);
-		chunkLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+	private void updateConnectionIndicator()
+	{
+		if (plugin.isConnected())
+		{
+			connectionIndicator.setForeground(Color.GREEN);
+			connectionIndicator.setToolTipText("Connected");
+			return;
+		}
 
-		JLabel healthLabel = new JLabel(data.getHealth() + "%", SwingConstants.CENTER);
-		healthLabel.setForeground(getHealthColor(data.getHealth()));
+		switch (plugin.getReconnectState())
+		{
+			case OPEN:
+				connectionIndicator.setForeground(Color.RED);
+				connectionIndicator.setToolTipText("Server unavailable, waiting before retrying");
+				break;
+			case HALF_OPEN:
+				connectionIndicator.setForeground(Color.ORANGE);
+				connectionIndicator.setToolTipText("Checking whether the server is back");
+				break;
+			case CLOSED:
+			default:
+				connectionIndicator.setForeground(Color.YELLOW);
+				connectionIndicator.setToolTipText("Disconnected, reconnecting");
+				break;
+		}
+	}
+
+	private boolean showMessage(String text)
+	{
+		messageLabel.setText(text);
+		rows.clear();
 
-		String playerText = data.getAttackingPlayers() + "/" + data.getTotalPlayers();
-		JLabel playersLabel = new JLabel(playerText, SwingConstants.CENTER);
-		playersLabel.setForeground(getPlayerCountColor(data.getTotalPlayers()));
-		playersLabel.setToolTipText(data.getAttackingPlayers() + " attacking, " + data.getTotalPlayers() + " total");
+		if (showingMessage)
+		{
+			return false;
+		}
 
-		row.add(worldLabel);
-		row.add(chunkLabel);
-		row.add(healthLabel);
-		row.add(playersLabel);
+		worldListPanel.removeAll();
+		worldListPanel.add(Box.createVerticalGlue());
+		worldListPanel.add(messageLabel);
+		worldListPanel.add(Box.createVerticalGlue());
+		showingMessage = true;
+		return true;
+	}
 
-		row.addMouseListener(new MouseAdapter()
+	private boolean showRows(List<WorldData> sortedWorlds)
+	{
+		boolean structureChanged = false;
+
+		if (showingMessage)
 		{
-			@Override
-			public void mouseClicked(MouseEvent e)
+			worldListPanel.removeAll();
+			showingMessage = false;
+			structureChanged = true;
+		}
+
+		Set<Integer> present = new HashSet<>();
+		for (int i = 0; i < sortedWorlds.size(); i++)
+		{
+			WorldData data = sortedWorlds.get(i);
+			present.add(data.getWorld());
+
+			WorldRow row = rows.get(data.getWorld());
+			if (row == null)
+			{
+				row = new WorldRow(data.getWorld());
+				rows.put(data.getWorld(), row);
+			}
+			row.update(data);
+
+			// Only move the row if it isn't already at its sorted position
+			if (i >= worldListPanel.getComponentCount() || worldListPanel.getComponent(i) != row)
+			{
+				worldListPanel.add(row, i);
+				structureChanged = true;
+			}
+		}
+
+		while (worldListPanel.getComponentCount() > sortedWorlds.size())
+		{
+			worldListPanel.remove(worldListPanel.getComponentCount() - 1);
+			structureChanged = true;
+		}
+
+		rows.keySet().retainAll(present);
+
+		return structureChanged;
+	}
+
+	private class WorldRow extends JPanel
+	{
+		private final JLabel chunkLabel;
+		private final JLabel healthLabel;
+		private final HealthSparkline sparkline;
+		private final JLabel playersLabel;
+
+		private int chunk = Integer.MIN_VALUE;
+		private int health = Integer.MIN_VALUE;
+		private int totalPlayers = Integer.MIN_VALUE;
+		private int attackingPlayers = Integer.MIN_VALUE;
+		private boolean restored;
+
+		WorldRow(int world)
+		{
+			super(new GridLayout(1, 4, 5, 0));
+			setBackground(ColorScheme.DARKER_GRAY_COLOR);
+			setBorder(new EmptyBorder(4, 5, 4, 5));
+			setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+			setMaximumSize(new Dimension(Integer.MAX_VALUE, 24));
+
+			JLabel worldLabel = new JLabel(String.valueOf(world), SwingConstants.CENTER);
+			worldLabel.setForeground(Color.WHITE);
+
+			chunkLabel = new JLabel("", SwingConstants.CENTER);
+			chunkLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+
+			healthLabel = new JLabel("", SwingConstants.CENTER);
+			sparkline = new HealthSparkline(world);
+
+			JPanel healthCell = new JPanel(new BorderLayout(2, 0));
+			healthCell.setOpaque(false);
+			healthCell.add(healthLabel, BorderLayout.CENTER);
+			healthCell.add(sparkline, BorderLayout.EAST);
+
+			playersLabel = new JLabel("", SwingConstants.CENTER);
+
+			add(worldLabel);
+			add(chunkLabel);
+			add(healthCell);
+			add(playersLabel);
+
+			addMouseListener(new MouseAdapter()
 			{
-				if (e.getClickCount() == 2)
+				@Override
+				public void mouseClicked(MouseEvent e)
+				{
+					if (e.getClickCount() == 2)
+					{
+						plugin.hopToWorld(world);
+					}
+				}
+
+				@Override
+				public void mouseEntered(MouseEvent e)
 				{
-					plugin.hopToWorld(data.getWorld());
+					setBackground(ColorScheme.DARKER_GRAY_HOVER_COLOR);
 				}
+
+				@Override
+				public void mouseExited(MouseEvent e)
+				{
+					setBackground(ColorScheme.DARKER_GRAY_COLOR);
+				}
+			});
+		}
+
+		void update(WorldData data)
+		{
+			if (data.getChunk() != chunk)
+			{
+				chunk = data.getChunk();
+				chunkLabel.setText(data.getChunkName());
 			}
 
-			@Override
-			public void mouseEntered(MouseEvent e)
+			boolean restyle = data.isRestored() != restored;
+			if (restyle)
 			{
-				row.setBackground(ColorScheme.DARKER_GRAY_HOVER_COLOR);
+				restored = data.isRestored();
+				setToolTipText(restored ? "Last known from your previous session" : null);
 			}
 
-			@Override
-			public void mouseExited(MouseEvent e)
+			int estimatedHealth = data.getEstimatedHealth(System.currentTimeMillis());
+			if (estimatedHealth != health || restyle)
 			{
-				row.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+				health = estimatedHealth;
+				healthLabel.setText(health + "%");
+				healthLabel.setForeground(restored ? ColorScheme.MEDIUM_GRAY_COLOR : getHealthColor(health));
 			}
-		});
+			sparkline.update(plugin.getWorldHistory());
 
-		return row;
+			if (data.getTotalPlayers() != totalPlayers || data.getAttackingPlayers() != attackingPlayers || restyle)
+			{
+				totalPlayers = data.getTotalPlayers();
+				attackingPlayers = data.getAttackingPlayers();
+				playersLabel.setText(attackingPlayers + "/" + totalPlayers);
+				playersLabel.setForeground(restored ? ColorScheme.MEDIUM_GRAY_COLOR : getPlayerCountColor(totalPlayers));
+				playersLabel.setToolTipText(attackingPlayers + " attacking, " + totalPlayers + " total");
+			}
+		}
 	}
 
 	private Color getHealthColor(int health)
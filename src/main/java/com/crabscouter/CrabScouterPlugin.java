@@ -1,36 +1,43 @@
 package com.crabscouter;
 
 import java.awt.image.BufferedImage;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Inject;
-import javax.swing.SwingUtilities;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import net.runelite.api.Actor;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
 import net.runelite.api.NPC;
-import net.runelite.api.Player;
 import net.runelite.api.WorldView;
 import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.GameStateChanged;
 import net.runelite.api.events.GameTick;
+import net.runelite.api.events.InteractingChanged;
 import net.runelite.api.events.NpcDespawned;
 import net.runelite.api.events.NpcSpawned;
-import net.runelite.api.widgets.ComponentID;
+import net.runelite.api.events.PlayerDespawned;
+import net.runelite.api.events.PlayerSpawned;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.events.WorldsFetch;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.util.ImageUtil;
-import net.runelite.client.util.WorldUtil;
-import net.runelite.http.api.worlds.World;
 import net.runelite.http.api.worlds.WorldResult;
 import net.runelite.client.game.WorldService;
 import com.google.gson.Gson;
+import com.google.inject.Provides;
+import net.runelite.client.config.ConfigManager;
 import okhttp3.OkHttpClient;
 
 @Slf4j
@@ -41,11 +48,17 @@ import okhttp3.OkHttpClient;
 )
 public class CrabScouterPlugin extends Plugin
 {
-	private static final int GEMSTONE_CRAB_ID = 14779;
-	private static final int CHUNK_NORTH = 4913;
-	private static final int CHUNK_WEST = 4911;
-	private static final int CHUNK_EAST = 5424;
 	private static final String SERVER_URL = "wss://crab-scouter.josephpmccarey.workers.dev";
+	// Lets development builds point at a local stand-in server, e.g. -Dcrabscouter.server=ws://localhost:8787
+	static final String SERVER_URL_PROPERTY = "crabscouter.server";
+
+	// Ticks between rescans of the loaded players, bounding how long the counts can drift
+	private static final int PLAYER_RESYNC_TICKS = 100;
+	// Health percent the observed crab may drift from the last report's extrapolation before reporting again
+	private static final int HEALTH_TOLERANCE = 3;
+	// Without damage rates listeners show the last reported health as is, so report every few percent instead
+	private static final int HEALTH_STEP = 5;
+	private static final long STORE_TICK_SECONDS = 1;
 
 	@Inject
 	private Client client;
@@ -65,12 +78,31 @@ public class CrabScouterPlugin extends Plugin
 	@Inject
 	private Gson gson;
 
+	@Inject
+	private ScheduledExecutorService executor;
+
+	@Inject
+	private CrabScouterConfig config;
+
+	private final WorldFeed worldFeed = new WorldFeed();
+
 	@Getter
-	private final List<WorldData> worldDataList = new CopyOnWriteArrayList<>();
+	private final CrabScouterMetrics metrics = new CrabScouterMetrics();
+
+	// Worlds the user wants to see, also sent to servers that filter for us
+	@Getter
+	private volatile WorldFilter worldFilter = WorldFilter.ALL;
+
+	// World we're logged in to, readable off the client thread
+	private volatile int loggedInWorld = -1;
+
+	private final WorldStoreFile worldStoreFile =
+		new WorldStoreFile(new File(new File(RuneLite.RUNELITE_DIR, "crab-scouter"), "worlds.bin"));
 
 	private CrabScouterPanel panel;
 	private NavigationButton navButton;
 	private CrabScouterWebSocketClient webSocketClient;
+	private PanelRefreshScheduler refreshScheduler;
 
 	@Getter
 	private boolean isReporter = false;
@@ -78,25 +110,42 @@ public class CrabScouterPlugin extends Plugin
 	@Getter
 	private boolean isConnected = false;
 
+	private final PlayerTracker playerTracker = new PlayerTracker();
+	private final TargetRegistry targets = TargetRegistry.getDefault();
+	private final CrabIndex crabIndex = new CrabIndex(targets);
+
+	private final HealthPredictor healthPredictor = new HealthPredictor();
+
 	private NPC trackedCrab;
-	private int lastHealthRatio = -1;
 	private int lastPlayerCount = -1;
 	private int currentChunk = -1;
 	private boolean inCrabArea = false;
 	private int ticksSinceLastReport = 0;
 	private int ticksWithoutCrab = 0;
+	private int ticksSincePlayerResync = 0;
+	private ScheduledFuture<?> storeTickFuture;
 
 	// World hopping state
-	private static final int HOP_MAX_ATTEMPTS = 3;
-	private net.runelite.api.World quickHopTargetWorld;
-	private int hopAttempts = 0;
-
+	private WorldHopper hopper;
+	private HopTargetCache hopTargets;
+	private final AtomicBoolean hopTargetRefreshPending = new AtomicBoolean();
 	@Override
 	protected void startUp() throws Exception
 	{
 		log.debug("Crab Scouter started!");
 
+		worldFilter = WorldFilter.fromConfig(config, targets);
+		worldFeed.setFilter(worldFilter);
 		panel = new CrabScouterPanel(this);
+		refreshScheduler = new PanelRefreshScheduler(this::refreshPanel, config::refreshRate, executor);
+		worldFeed.persistTo(worldStoreFile, executor);
+		hopTargets = new HopTargetCache(client);
+		updateRecommenderWeights();
+		hopper = new WorldHopper(client, clientThread, metrics, hopTargets);
+		restoreWorlds();
+		requestHopTargetRefresh();
+		storeTickFuture = executor.scheduleAtFixedRate(this::onStoreTick,
+			STORE_TICK_SECONDS, STORE_TICK_SECONDS, TimeUnit.SECONDS);
 
 		final BufferedImage icon = ImageUtil.loadImageResource(getClass(), "/crab_icon.png");
 		navButton = NavigationButton.builder()
@@ -108,7 +157,12 @@ public class CrabScouterPlugin extends Plugin
 
 		clientToolbar.addNavigation(navButton);
 
-		webSocketClient = new CrabScouterWebSocketClient(this, SERVER_URL, okHttpClient, gson);
+		// NPCs that spawned before the plugin started never fire NpcSpawned for us
+		clientThread.invokeLater(this::indexLoadedNpcs);
+
+		String serverUrl = System.getProperty(SERVER_URL_PROPERTY, SERVER_URL);
+		webSocketClient = new CrabScouterWebSocketClient(this, serverUrl, okHttpClient, gson, executor);
+		webSocketClient.setFilter(worldFilter);
 		webSocketClient.connect();
 	}
 
@@ -128,19 +182,79 @@ public class CrabScouterPlugin extends Plugin
 			webSocketClient = null;
 		}
 
+		worldFeed.save();
+		worldFeed.persistTo(null, null);
+
+		if (storeTickFuture != null)
+		{
+			storeTickFuture.cancel(false);
+			storeTickFuture = null;
+		}
+
 		clientToolbar.removeNavigation(navButton);
+		panel.shutdown();
+		refreshScheduler = null;
 		panel = null;
 		navButton = null;
 
-		trackedCrab = null;
+		setTrackedCrab(null);
+		playerTracker.clear();
+		crabIndex.clear();
+		hopTargets = null;
+		hopper = null;
 		inCrabArea = false;
 		isReporter = false;
 		isConnected = false;
 	}
 
+	@Provides
+	CrabScouterConfig provideConfig(ConfigManager configManager)
+	{
+		return configManager.getConfig(CrabScouterConfig.class);
+	}
+
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event)
+	{
+		if (CrabScouterConfig.GROUP.equals(event.getGroup()))
+		{
+			updateRecommenderWeights();
+			updateWorldFilter();
+			updatePanel();
+		}
+	}
+
+	private void updateWorldFilter()
+	{
+		WorldFilter filter = WorldFilter.fromConfig(config, targets);
+		if (filter.equals(worldFilter))
+		{
+			return;
+		}
+
+		worldFilter = filter;
+		worldFeed.setFilter(filter);
+		if (webSocketClient != null)
+		{
+			webSocketClient.setFilter(filter);
+		}
+	}
+
+	private void updateRecommenderWeights()
+	{
+		worldFeed.setWeights(config.healthWeight(), config.playersWeight(), config.freshnessWeight());
+	}
+
 	@Subscribe
 	public void onGameStateChanged(GameStateChanged event)
 	{
+		if (hopper != null)
+		{
+			hopper.onGameStateChanged(event.getGameState());
+		}
+
+		loggedInWorld = event.getGameState() == GameState.LOGGED_IN ? client.getWorld() : -1;
+
 		if (event.getGameState() == GameState.LOGIN_SCREEN || event.getGameState() == GameState.HOPPING)
 		{
 			if (inCrabArea && webSocketClient != null)
@@ -148,16 +262,43 @@ public class CrabScouterPlugin extends Plugin
 				webSocketClient.sendLeave(client.getWorld());
 			}
 			inCrabArea = false;
-			trackedCrab = null;
+			setTrackedCrab(null);
+			playerTracker.clear();
+			crabIndex.clear();
 			isReporter = false;
 			currentChunk = -1;
 		}
 	}
 
+	@Subscribe
+	public void onWidgetLoaded(WidgetLoaded event)
+	{
+		if (hopper != null)
+		{
+			hopper.onWidgetLoaded(event.getGroupId());
+		}
+	}
+
 	@Subscribe
 	public void onGameTick(GameTick event)
 	{
-		handleHop();
+		long start = System.nanoTime();
+		try
+		{
+			handleGameTick();
+		}
+		finally
+		{
+			metrics.gameTick.record(System.nanoTime() - start);
+		}
+	}
+
+	private void handleGameTick()
+	{
+		if (hopper != null)
+		{
+			hopper.onGameTick();
+		}
 
 		if (client.getGameState() != GameState.LOGGED_IN)
 		{
@@ -173,7 +314,7 @@ public class CrabScouterPlugin extends Plugin
 		}
 
 		boolean wasInCrabArea = inCrabArea;
-		inCrabArea = (regionId == CHUNK_NORTH || regionId == CHUNK_WEST || regionId == CHUNK_EAST);
+		inCrabArea = targets.isScouted(regionId);
 		currentChunk = inCrabArea ? regionId : -1;
 
 		if (inCrabArea && !wasInCrabArea)
@@ -188,7 +329,9 @@ public class CrabScouterPlugin extends Plugin
 		if (inCrabArea && isReporter)
 		{
 			ticksSinceLastReport++;
+			long start = System.nanoTime();
 			checkAndReport();
+			metrics.checkAndReport.record(System.nanoTime() - start);
 		}
 		else
 		{
@@ -199,6 +342,8 @@ public class CrabScouterPlugin extends Plugin
 	private void onEnterCrabArea()
 	{
 		log.debug("Entered crab area in chunk {}", currentChunk);
+		WorldView worldView = client.getTopLevelWorldView();
+		playerTracker.reset(currentChunk, worldView != null ? worldView.players() : null);
 		if (webSocketClient != null)
 		{
 			webSocketClient.sendJoin(client.getWorld(), currentChunk);
@@ -213,82 +358,71 @@ public class CrabScouterPlugin extends Plugin
 		{
 			webSocketClient.sendLeave(client.getWorld());
 		}
-		trackedCrab = null;
+		setTrackedCrab(null);
+		playerTracker.clear();
 		isReporter = false;
-		lastHealthRatio = -1;
+		healthPredictor.reset();
 		lastPlayerCount = -1;
 		ticksSinceLastReport = 0;
+		ticksSincePlayerResync = 0;
 	}
 
 	@Subscribe
 	public void onNpcSpawned(NpcSpawned event)
 	{
-		if (!inCrabArea)
-		{
-			return;
-		}
-
 		NPC npc = event.getNpc();
-		if (npc.getId() == GEMSTONE_CRAB_ID)
+		if (!crabIndex.add(npc))
 		{
-			trackedCrab = npc;
-			log.debug("Gemstone crab spawned by ID: {}", npc.getId());
 			return;
 		}
-		
-		String name = npc.getName();
-		if (name != null && isGemstoneCrab(name))
+
+		log.debug("Gemstone crab spawned: {} (ID: {}) in region {}", npc.getName(), npc.getId(), crabIndex.getRegion(npc));
+		if (inCrabArea && trackedCrab == null && crabIndex.getRegion(npc) == currentChunk)
 		{
-			trackedCrab = npc;
-			log.debug("Gemstone crab spawned by name: {} (ID: {})", name, npc.getId());
+			setTrackedCrab(npc);
 		}
 	}
 
-	private boolean isGemstoneCrab(String name)
-	{
-		String lower = name.toLowerCase();
-		return lower.contains("gemstone") && lower.contains("crab") && !lower.contains("shell");
-	}
-
 	@Subscribe
 	public void onNpcDespawned(NpcDespawned event)
 	{
+		crabIndex.remove(event.getNpc());
+
 		if (trackedCrab != null && event.getNpc() == trackedCrab)
 		{
-			trackedCrab = null;
+			setTrackedCrab(null);
 			log.debug("Gemstone crab despawned");
 		}
 	}
 
 	private void findCrab()
 	{
+		NPC crab = crabIndex.find(currentChunk);
+		if (crab != null)
+		{
+			setTrackedCrab(crab);
+			log.debug("Found gemstone crab: {} (ID: {})", crab.getName(), crab.getId());
+		}
+		else
+		{
+			log.debug("Gemstone crab not found among {} indexed crabs", crabIndex.size());
+		}
+	}
+
+	private void indexLoadedNpcs()
+	{
+		crabIndex.clear();
+
 		WorldView worldView = client.getTopLevelWorldView();
 		if (worldView == null)
 		{
 			return;
 		}
 
-		int npcCount = 0;
 		for (NPC npc : worldView.npcs())
 		{
-			npcCount++;
-			if (npc.getId() == GEMSTONE_CRAB_ID)
-			{
-				trackedCrab = npc;
-				log.debug("Found gemstone crab by ID: {}", npc.getId());
-				return;
-			}
-			
-			String name = npc.getName();
-			if (name != null && isGemstoneCrab(name))
-			{
-				trackedCrab = npc;
-				log.debug("Found gemstone crab by name: {} (ID: {})", name, npc.getId());
-				return;
-			}
+			crabIndex.add(npc);
 		}
-		
-		log.debug("Gemstone crab not found in {} NPCs", npcCount);
 	}
 
 	private void checkAndReport()
@@ -318,35 +452,54 @@ public class CrabScouterPlugin extends Plugin
 
 		ticksWithoutCrab = 0;
 
-		int crabChunk = trackedCrab.getWorldLocation().getRegionID();
+		int crabChunk = crabIndex.getRegion(trackedCrab);
 		if (crabChunk != currentChunk)
 		{
 			log.debug("Crab is in different chunk ({}) than player ({})", crabChunk, currentChunk);
-			trackedCrab = null;
+			setTrackedCrab(null);
 			return;
 		}
 
+		// Players who walk in or out without attacking fire no event the tracker sees
+		if (++ticksSincePlayerResync >= PLAYER_RESYNC_TICKS)
+		{
+			WorldView worldView = client.getTopLevelWorldView();
+			playerTracker.resync(worldView != null ? worldView.players() : null);
+			ticksSincePlayerResync = 0;
+		}
+
 		int currentHealth = getHealthPercent();
-		int[] playerCounts = countPlayers();
-		int totalPlayers = playerCounts[0];
-		int attackingPlayers = playerCounts[1];
+		int totalPlayers = playerTracker.getTotalPlayers();
+		long now = System.currentTimeMillis();
 
-		boolean healthChanged = Math.abs(currentHealth - lastHealthRatio) > 5;
+		// Listeners extrapolate from our last report, so health only needs a report once it drifts off that line
+		int tolerance = webSocketClient.isDamageRateAccepted() ? HEALTH_TOLERANCE : HEALTH_STEP;
+		boolean healthChanged = healthPredictor.divergence(currentHealth, now) > tolerance;
 		boolean playersChanged = totalPlayers != lastPlayerCount;
 		boolean heartbeat = ticksSinceLastReport >= 100;
 
 		if (healthChanged || playersChanged || heartbeat)
 		{
-			log.debug("Sending report: world={}, chunk={}, health={}, total={}, attacking={}, reason={}",
-				client.getWorld(), crabChunk, currentHealth, totalPlayers, attackingPlayers,
-				heartbeat ? "heartbeat" : (healthChanged ? "health" : "players"));
-			webSocketClient.sendReport(client.getWorld(), crabChunk, currentHealth, totalPlayers, attackingPlayers);
-			lastHealthRatio = currentHealth;
-			lastPlayerCount = totalPlayers;
-			ticksSinceLastReport = 0;
+			log.debug("Sending report: reason={}", heartbeat ? "heartbeat" : (healthChanged ? "health" : "players"));
+			sendReport(crabChunk, currentHealth, now);
 		}
 	}
 
+	private void sendReport(int chunk, int health, long now)
+	{
+		int totalPlayers = playerTracker.getTotalPlayers();
+		int attackingPlayers = playerTracker.getAttackingPlayers();
+		int damageRate = attackingPlayers > 0 && webSocketClient.isDamageRateAccepted()
+			? healthPredictor.measureRate(health, now) : 0;
+
+		log.debug("Sending report: world={}, chunk={}, health={}, total={}, attacking={}, damageRate={}",
+			client.getWorld(), chunk, health, totalPlayers, attackingPlayers, damageRate);
+		webSocketClient.sendReport(client.getWorld(), chunk, health, totalPlayers, attackingPlayers, damageRate);
+		healthPredictor.onReported(health, damageRate, now);
+		lastPlayerCount = totalPlayers;
+		ticksSinceLastReport = 0;
+	}
+
 	private int getHealthPercent()
 	{
 		if (trackedCrab == null)
@@ -368,39 +521,37 @@ public class CrabScouterPlugin extends Plugin
 		return (int) ((ratio / (double) scale) * 100);
 	}
 
-	private int[] countPlayers()
+	private void setTrackedCrab(NPC npc)
 	{
-		int totalPlayers = 0;
-		int attackingPlayers = 0;
-		
-		WorldView worldView = client.getTopLevelWorldView();
-		if (worldView == null)
+		trackedCrab = npc;
+		playerTracker.setCrab(npc);
+	}
+
+	@Subscribe
+	public void onPlayerSpawned(PlayerSpawned event)
+	{
+		if (inCrabArea)
 		{
-			return new int[]{0, 0};
+			playerTracker.onPlayerSpawned(event.getPlayer());
 		}
+	}
 
-		for (Player player : worldView.players())
+	@Subscribe
+	public void onPlayerDespawned(PlayerDespawned event)
+	{
+		if (inCrabArea)
 		{
-			if (player == null)
-			{
-				continue;
-			}
-			
-			totalPlayers++;
+			playerTracker.onPlayerDespawned(event.getPlayer());
+		}
+	}
 
-			if (trackedCrab != null)
-			{
-				Actor target = player.getInteracting();
-				if (target == trackedCrab)
-				{
-					attackingPlayers++;
-				}
-			}
+	@Subscribe
+	public void onInteractingChanged(InteractingChanged event)
+	{
+		if (inCrabArea)
+		{
+			playerTracker.onInteractingChanged(event.getSource(), event.getTarget());
 		}
-		
-		log.debug("countPlayers: total={}, attacking={}", totalPlayers, attackingPlayers);
-		
-		return new int[]{totalPlayers, attackingPlayers};
 	}
 
 	public void onWebSocketConnected()
@@ -408,15 +559,6 @@ public class CrabScouterPlugin extends Plugin
 		isConnected = true;
 		log.debug("WebSocket connected");
 		updatePanel();
-
-		clientThread.invokeLater(() ->
-		{
-			if (inCrabArea && client.getGameState() == GameState.LOGGED_IN)
-			{
-				log.debug("Reconnected while in crab area, resending join");
-				webSocketClient.sendJoin(client.getWorld(), currentChunk);
-			}
-		});
 	}
 
 	public void onWebSocketDisconnected()
@@ -427,6 +569,22 @@ public class CrabScouterPlugin extends Plugin
 		updatePanel();
 	}
 
+	public void onReconnectAttempt()
+	{
+		updatePanel();
+	}
+
+	public File exportMetrics() throws IOException
+	{
+		return metrics.export(gson);
+	}
+
+	public ReconnectPolicy.State getReconnectState()
+	{
+		CrabScouterWebSocketClient client = webSocketClient;
+		return client != null ? client.getReconnectState() : ReconnectPolicy.State.CLOSED;
+	}
+
 	public void onRoleAssigned(boolean reporter)
 	{
 		isReporter = reporter;
@@ -436,36 +594,116 @@ public class CrabScouterPlugin extends Plugin
 		{
 			clientThread.invokeLater(() ->
 			{
-				int currentHealth = getHealthPercent();
-				int[] playerCounts = countPlayers();
-				webSocketClient.sendReport(client.getWorld(), currentChunk, currentHealth, playerCounts[0], playerCounts[1]);
-				lastHealthRatio = currentHealth;
-				lastPlayerCount = playerCounts[0];
-				ticksSinceLastReport = 0;
+				if (webSocketClient != null)
+				{
+					healthPredictor.reset();
+					sendReport(currentChunk, getHealthPercent(), System.currentTimeMillis());
+				}
 			});
 		}
 	}
 
-	public void onWorldsUpdate(List<WorldData> worlds)
+	public WorldStore getWorldStore()
+	{
+		return worldFeed.getStore();
+	}
+
+	public WorldHistory getWorldHistory()
+	{
+		return worldFeed.getHistory();
+	}
+
+	public void onWorldsSnapshot(WorldBatch worlds)
+	{
+		log.debug("onWorldsSnapshot called with {} worlds", worlds.size());
+		if (worldFeed.applySnapshot(worlds))
+		{
+			onWorldsChanged();
+		}
+	}
+
+	public void onWorldsPatch(WorldBatch upserts, int[] removes)
+	{
+		log.debug("onWorldsPatch called with {} upserts and {} removes", upserts.size(), removes.length);
+		if (worldFeed.applyPatch(upserts, removes))
+		{
+			onWorldsChanged();
+		}
+	}
+
+	// Best world to hop to other than the current one, or -1
+	public int getBestWorld()
+	{
+		return worldFeed.best(loggedInWorld);
+	}
+
+	public void hopToBestWorld()
+	{
+		int world = getBestWorld();
+		if (world != -1)
+		{
+			hopToWorld(world);
+		}
+	}
+
+	private void onWorldsChanged()
 	{
-		log.debug("onWorldsUpdate called with {} worlds", worlds.size());
-		worldDataList.clear();
-		worldDataList.addAll(worlds);
 		updatePanel();
+		if (hopTargets != null)
+		{
+			requestHopTargetRefresh();
+		}
+	}
+
+	private void restoreWorlds()
+	{
+		if (worldFeed.restore())
+		{
+			updatePanel();
+		}
+	}
+
+	// Worlds expire and extrapolated health moves without any message arriving. Everything that expired this
+	// second is published together, so an expiry batch costs one panel refresh.
+	private void onStoreTick()
+	{
+		if (worldFeed.tick(System.currentTimeMillis()))
+		{
+			updatePanel();
+		}
 	}
 
 	private void updatePanel()
 	{
-		log.debug("updatePanel called, panel={}, worldDataList size={}", panel != null, worldDataList.size());
+		log.debug("updatePanel called, panel={}, worlds={}", panel != null, getWorldStore().snapshot().size());
+		if (refreshScheduler != null)
+		{
+			refreshScheduler.markDirty();
+		}
+	}
+
+	private void refreshPanel()
+	{
 		if (panel != null)
 		{
-			SwingUtilities.invokeLater(panel::update);
+			panel.update();
 		}
 	}
 
+	// Called from the panel on the EDT; the hop itself is queued on the client thread
 	public void hopToWorld(int worldNumber)
 	{
 		log.debug("hopToWorld called for world {}", worldNumber);
+		long requestedAt = System.nanoTime();
+		clientThread.invoke(() -> queueHop(worldNumber, requestedAt));
+	}
+
+	private void queueHop(int worldNumber, long requestedAt)
+	{
+		if (hopTargets == null || hopper == null)
+		{
+			return;
+		}
 
 		if (client.getGameState() != GameState.LOGGED_IN)
 		{
@@ -480,64 +718,51 @@ public class CrabScouterPlugin extends Plugin
 			return;
 		}
 
-		WorldResult worldResult = worldService.getWorlds();
-		if (worldResult == null)
+		log.info("Hopping to world {} (current: {})", worldNumber, currentWorld);
+		if (!hopper.request(worldNumber, requestedAt))
 		{
-			log.warn("World list not loaded yet");
-			return;
+			// The world list isn't loaded or doesn't know this world yet; the hopper waits briefly for a fresh one
+			log.debug("No hop target for world {} yet, waiting for the world list", worldNumber);
+			worldService.refresh();
 		}
+	}
+
+	@Subscribe
+	public void onWorldsFetch(WorldsFetch event)
+	{
+		WorldResult worldResult = event.getWorldResult();
+		clientThread.invokeLater(() -> refreshHopTargets(worldResult));
+	}
 
-		World targetWorld = worldResult.findWorld(worldNumber);
-		if (targetWorld == null)
+	// Keeps a hop target ready for every world in the feed. Coalesced, since the feed changes far more often
+	// than new worlds appear in it.
+	private void requestHopTargetRefresh()
+	{
+		if (hopTargetRefreshPending.compareAndSet(false, true))
 		{
-			log.warn("Could not find world {} in world list", worldNumber);
-			return;
+			clientThread.invokeLater(() ->
+			{
+				hopTargetRefreshPending.set(false);
+				WorldResult worldResult = worldService.getWorlds();
+				if (worldResult != null && hopTargets != null && !hopTargets.covers(getWorldStore().snapshot()))
+				{
+					refreshHopTargets(worldResult);
+				}
+			});
 		}
-
-		log.info("Hopping to world {} (current: {})", worldNumber, currentWorld);
-		net.runelite.api.World rsWorld = client.createWorld();
-		rsWorld.setActivity(targetWorld.getActivity());
-		rsWorld.setAddress(targetWorld.getAddress());
-		rsWorld.setId(targetWorld.getId());
-		rsWorld.setPlayerCount(targetWorld.getPlayers());
-		rsWorld.setLocation(targetWorld.getLocation());
-		rsWorld.setTypes(WorldUtil.toWorldTypes(targetWorld.getTypes()));
-
-		// Set target world - actual hop happens in handleHop() on game tick
-		quickHopTargetWorld = rsWorld;
-		hopAttempts = 0;
 	}
 
-	private void handleHop()
+	private void refreshHopTargets(WorldResult worldResult)
 	{
-		if (quickHopTargetWorld == null)
+		if (hopTargets == null || worldResult == null)
 		{
 			return;
 		}
 
-		// Check if world switcher is open
-		if (client.getWidget(ComponentID.WORLD_SWITCHER_WORLD_LIST) == null)
-		{
-			// Open the world hopper first
-			client.openWorldHopper();
-
-			if (++hopAttempts >= HOP_MAX_ATTEMPTS)
-			{
-				log.warn("Failed to open world switcher after {} attempts", hopAttempts);
-				resetHop();
-			}
-		}
-		else
+		hopTargets.rebuild(worldResult, getWorldStore().snapshot());
+		if (hopper != null)
 		{
-			// World switcher is open, perform the hop
-			client.hopToWorld(quickHopTargetWorld);
-			resetHop();
+			hopper.onTargetsRebuilt();
 		}
 	}
-
-	private void resetHop()
-	{
-		quickHopTargetWorld = null;
-		hopAttempts = 0;
-	}
 }
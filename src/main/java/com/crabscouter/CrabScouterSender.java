@@ -0,0 +1,201 @@
+package com.crabscouter;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+// Outbound message queue drained by a dedicated sender thread, so callers never pay for serialization or
+// socket I/O. Messages are sent in the order they were queued, except that a report still at the tail of
+// the queue is replaced in place by a newer report for the same world, and a queued subscribe by a newer
+// subscribe. While disconnected, messages wait in the queue.
+@Slf4j
+public class CrabScouterSender implements Runnable
+{
+	enum Type
+	{
+		JOIN, LEAVE, REPORT, RESIGN, RESYNC, SUBSCRIBE
+	}
+
+	static final class Message
+	{
+		Type type;
+		int world;
+		int chunk;
+		int health;
+		int totalPlayers;
+		int attackingPlayers;
+		int damageRate;
+		long seq;
+		WorldFilter filter;
+	}
+
+	interface Transport
+	{
+		void write(Message message);
+	}
+
+	private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+	private final Transport transport;
+	private final ArrayDeque<Message> queue = new ArrayDeque<>();
+	private Message pendingSubscribe;
+
+	// Cleared by the sender thread itself as it exits, so it stays set while a stopped thread is still draining
+	private Thread thread;
+	private boolean running;
+	private boolean connected;
+
+	public CrabScouterSender(Transport transport)
+	{
+		this.transport = transport;
+	}
+
+	public synchronized void start()
+	{
+		running = true;
+		if (thread != null)
+		{
+			// Not yet exited after stop(), so it carries on instead of racing a second thread
+			return;
+		}
+
+		thread = new Thread(this, "crab-scouter-sender");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Stops the sender thread after it has flushed what is queued, waiting at most STOP_TIMEOUT_MILLIS
+	public void stop()
+	{
+		Thread t;
+		synchronized (this)
+		{
+			running = false;
+			notifyAll();
+			t = thread;
+		}
+
+		if (t != null && t != Thread.currentThread())
+		{
+			try
+			{
+				t.join(STOP_TIMEOUT_MILLIS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public synchronized void setConnected(boolean connected)
+	{
+		this.connected = connected;
+		notifyAll();
+	}
+
+	public synchronized void clear()
+	{
+		queue.clear();
+		pendingSubscribe = null;
+	}
+
+	public synchronized void enqueue(Type type, int world, int chunk, long seq)
+	{
+		Message message = new Message();
+		message.type = type;
+		message.world = world;
+		message.chunk = chunk;
+		message.seq = seq;
+		queue.addLast(message);
+		notifyAll();
+	}
+
+	public synchronized void enqueueReport(int world, int chunk, int health, int totalPlayers, int attackingPlayers,
+		int damageRate)
+	{
+		// Only a report with nothing queued behind it can be updated in place; replacing one queued before a
+		// leave or join would send the new values ahead of that message
+		Message message = queue.peekLast();
+		if (message == null || message.type != Type.REPORT || message.world != world)
+		{
+			message = new Message();
+			message.type = Type.REPORT;
+			message.world = world;
+			queue.addLast(message);
+			notifyAll();
+		}
+
+		message.chunk = chunk;
+		message.health = health;
+		message.totalPlayers = totalPlayers;
+		message.attackingPlayers = attackingPlayers;
+		message.damageRate = damageRate;
+	}
+
+	public synchronized void enqueueSubscribe(WorldFilter filter)
+	{
+		if (pendingSubscribe == null)
+		{
+			pendingSubscribe = new Message();
+			pendingSubscribe.type = Type.SUBSCRIBE;
+			queue.addLast(pendingSubscribe);
+			notifyAll();
+		}
+		pendingSubscribe.filter = filter;
+	}
+
+	@Override
+	public void run()
+	{
+		while (true)
+		{
+			Message message;
+			synchronized (this)
+			{
+				while (running && (!connected || queue.isEmpty()))
+				{
+					try
+					{
+						wait(TimeUnit.SECONDS.toMillis(1));
+					}
+					catch (InterruptedException e)
+					{
+						exit();
+						return;
+					}
+				}
+
+				if (!connected || queue.isEmpty())
+				{
+					exit();
+					return;
+				}
+
+				message = queue.pollFirst();
+				if (message == pendingSubscribe)
+				{
+					pendingSubscribe = null;
+				}
+			}
+
+			try
+			{
+				transport.write(message);
+			}
+			catch (Exception e)
+			{
+				log.warn("Failed to send {} message", message.type, e);
+			}
+		}
+	}
+
+	// Called with the lock held as the thread decides to exit, so start() either sees it running or gone
+	private void exit()
+	{
+		if (thread == Thread.currentThread())
+		{
+			thread = null;
+		}
+	}
+}
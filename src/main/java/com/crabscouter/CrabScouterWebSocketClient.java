@@ -3,52 +3,88 @@ package com.crabscouter;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.ByteString;
 
 @Slf4j
 public class CrabScouterWebSocketClient extends WebSocketListener
 {
-	private static final int RECONNECT_DELAY_SECONDS = 5;
+	private static final int PROTOCOL_VERSION = 1;
+	// How long a resync may go unanswered while patches keep arriving before it is sent again
+	private static final long RESYNC_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+	// Close code servers use to ask clients to back off; the reason carries the delay in seconds
+	private static final int CLOSE_TRY_AGAIN_LATER = 1013;
 
 	private final CrabScouterPlugin plugin;
 	private final String serverUrl;
 	private final OkHttpClient httpClient;
 	private final Gson gson;
 	private final ScheduledExecutorService executor;
+	private final CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
 
-	private WebSocket webSocket;
-	private boolean shouldReconnect = true;
-	private boolean isConnecting = false;
+	private final CrabScouterSender sender = new CrabScouterSender(this::write);
+	private final ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+	private ScheduledFuture<?> reconnectFuture;
 
-	public CrabScouterWebSocketClient(CrabScouterPlugin plugin, String serverUrl, OkHttpClient httpClient, Gson gson)
+	private volatile WebSocket webSocket;
+	private boolean shouldReconnect = true;
+	private final AtomicBoolean isConnecting = new AtomicBoolean();
+	// Whether the server has answered on this connection; one that closes before then counts as a failure
+	private boolean established = false;
+
+	// Sequence number of the last applied snapshot or patch, -1 until a snapshot arrives
+	private long lastSeq = -1;
+	private boolean awaitingResync = false;
+	private long resyncRequestedAt;
+
+	// Set once the server accepts the binary capability; until then everything is sent as JSON
+	private volatile boolean binary = false;
+	// Set once the server accepts the filter capability; only then is the filter sent
+	private volatile boolean filtering = false;
+	private volatile WorldFilter filter = WorldFilter.ALL;
+
+	// Set once the server accepts damage rates, so listeners extrapolate health from our reports
+	@Getter
+	private volatile boolean damageRateAccepted = false;
+
+	// World and chunk of the last join without a matching leave, replayed when the socket reopens
+	private int joinedWorld = -1;
+	private int joinedChunk = -1;
+
+	public CrabScouterWebSocketClient(CrabScouterPlugin plugin, String serverUrl, OkHttpClient httpClient, Gson gson,
+		ScheduledExecutorService executor)
 	{
 		this.plugin = plugin;
 		this.serverUrl = serverUrl;
 		this.httpClient = httpClient;
 		this.gson = gson;
-		this.executor = Executors.newSingleThreadScheduledExecutor();
+		this.executor = executor;
+	}
+
+	public ReconnectPolicy.State getReconnectState()
+	{
+		return reconnectPolicy.getState();
 	}
 
-	public void connect()
+	public synchronized void connect()
 	{
-		if (isConnecting || webSocket != null)
+		if (webSocket != null || !isConnecting.compareAndSet(false, true))
 		{
 			return;
 		}
 
-		isConnecting = true;
 		shouldReconnect = true;
+		sender.start();
 
 		Request request = new Request.Builder()
 			.url(serverUrl)
@@ -57,10 +93,17 @@ public class CrabScouterWebSocketClient extends WebSocketListener
 		webSocket = httpClient.newWebSocket(request, this);
 	}
 
-	public void close()
+	public synchronized void close()
 	{
 		shouldReconnect = false;
-		executor.shutdown();
+		if (reconnectFuture != null)
+		{
+			reconnectFuture.cancel(false);
+			reconnectFuture = null;
+		}
+
+		// Let queued messages such as the final leave go out before the socket closes
+		sender.stop();
 
 		if (webSocket != null)
 		{
@@ -71,167 +114,469 @@ public class CrabScouterWebSocketClient extends WebSocketListener
 
 	public void sendJoin(int world, int chunk)
 	{
-		if (webSocket == null)
+		synchronized (this)
 		{
-			return;
+			joinedWorld = world;
+			joinedChunk = chunk;
 		}
-
-		JsonObject message = new JsonObject();
-		message.addProperty("type", "join");
-		message.addProperty("world", world);
-		message.addProperty("chunk", chunk);
-
-		webSocket.send(gson.toJson(message));
-		log.debug("Sent join message for world {} chunk {}", world, chunk);
+		sender.enqueue(CrabScouterSender.Type.JOIN, world, chunk, 0);
 	}
 
 	public void sendLeave(int world)
 	{
-		if (webSocket == null)
+		synchronized (this)
 		{
-			return;
+			if (joinedWorld == world)
+			{
+				joinedWorld = -1;
+				joinedChunk = -1;
+			}
 		}
+		sender.enqueue(CrabScouterSender.Type.LEAVE, world, 0, 0);
+	}
 
-		JsonObject message = new JsonObject();
-		message.addProperty("type", "leave");
-		message.addProperty("world", world);
+	public void sendReport(int world, int chunk, int health, int totalPlayers, int attackingPlayers, int damageRate)
+	{
+		sender.enqueueReport(world, chunk, health, totalPlayers, attackingPlayers, damageRate);
+	}
 
-		webSocket.send(gson.toJson(message));
-		log.debug("Sent leave message for world {}", world);
+	public void sendResign(int world)
+	{
+		sender.enqueue(CrabScouterSender.Type.RESIGN, world, 0, 0);
 	}
 
-	public void sendReport(int world, int chunk, int health, int totalPlayers, int attackingPlayers)
+	// Sent now if the server filters, otherwise after a welcome that accepts filtering
+	public void setFilter(WorldFilter filter)
 	{
-		if (webSocket == null)
+		this.filter = filter;
+		if (filtering)
 		{
-			return;
+			sender.enqueueSubscribe(filter);
 		}
+	}
 
-		JsonObject message = new JsonObject();
-		message.addProperty("type", "report");
-		message.addProperty("world", world);
-		message.addProperty("chunk", chunk);
-		message.addProperty("health", health);
-		message.addProperty("totalPlayers", totalPlayers);
-		message.addProperty("attackingPlayers", attackingPlayers);
-
-		webSocket.send(gson.toJson(message));
-		log.debug("Sent report: world={} chunk={} health={} total={} attacking={}", world, chunk, health, totalPlayers, attackingPlayers);
+	// The server answers with a snapshot
+	private void sendResync()
+	{
+		awaitingResync = true;
+		resyncRequestedAt = nanoTime();
+		sender.enqueue(CrabScouterSender.Type.RESYNC, 0, 0, lastSeq);
 	}
 
-	public void sendResign(int world)
+	// Runs on the sender thread
+	private void write(CrabScouterSender.Message message)
 	{
-		if (webSocket == null)
+		WebSocket socket = webSocket;
+		if (socket == null)
 		{
 			return;
 		}
 
-		JsonObject message = new JsonObject();
-		message.addProperty("type", "resign");
-		message.addProperty("world", world);
+		if (binary)
+		{
+			socket.send(encodeBinary(message));
+		}
+		else
+		{
+			socket.send(gson.toJson(encodeJson(message)));
+		}
+		plugin.getMetrics().messagesOut.increment();
+		log.debug("Sent {} message for world {}", message.type, message.world);
+	}
 
-		webSocket.send(gson.toJson(message));
-		log.debug("Sent resign message for world {}", world);
+	static ByteString encodeBinary(CrabScouterSender.Message message)
+	{
+		switch (message.type)
+		{
+			case JOIN:
+				return CrabScouterBinaryProtocol.encodeJoin(message.world, message.chunk);
+			case LEAVE:
+				return CrabScouterBinaryProtocol.encodeLeave(message.world);
+			case REPORT:
+				return CrabScouterBinaryProtocol.encodeReport(message.world, message.chunk, message.health,
+					message.totalPlayers, message.attackingPlayers, message.damageRate);
+			case RESIGN:
+				return CrabScouterBinaryProtocol.encodeResign(message.world);
+			case SUBSCRIBE:
+				return CrabScouterBinaryProtocol.encodeSubscribe(message.filter);
+			case RESYNC:
+			default:
+				return CrabScouterBinaryProtocol.encodeResync(message.seq);
+		}
+	}
+
+	static JsonObject encodeJson(CrabScouterSender.Message message)
+	{
+		JsonObject json = new JsonObject();
+		switch (message.type)
+		{
+			case JOIN:
+				json.addProperty("type", "join");
+				json.addProperty("world", message.world);
+				json.addProperty("chunk", message.chunk);
+				break;
+			case LEAVE:
+				json.addProperty("type", "leave");
+				json.addProperty("world", message.world);
+				break;
+			case REPORT:
+				json.addProperty("type", "report");
+				json.addProperty("world", message.world);
+				json.addProperty("chunk", message.chunk);
+				json.addProperty("health", message.health);
+				json.addProperty("totalPlayers", message.totalPlayers);
+				json.addProperty("attackingPlayers", message.attackingPlayers);
+				json.addProperty("damageRate", message.damageRate);
+				break;
+			case RESIGN:
+				json.addProperty("type", "resign");
+				json.addProperty("world", message.world);
+				break;
+			case RESYNC:
+				json.addProperty("type", "resync");
+				json.addProperty("seq", message.seq);
+				break;
+			case SUBSCRIBE:
+				json.addProperty("type", "subscribe");
+				json.add("chunks", toJsonArray(message.filter.getChunks()));
+				json.add("worlds", toJsonArray(message.filter.getWorlds()));
+				json.addProperty("maxPlayers", message.filter.getMaxPlayers());
+				json.addProperty("minHealth", message.filter.getMinHealth());
+				break;
+		}
+		return json;
+	}
+
+	private static JsonArray toJsonArray(int[] values)
+	{
+		JsonArray array = new JsonArray();
+		for (int value : values)
+		{
+			array.add(value);
+		}
+		return array;
 	}
 
 	@Override
 	public void onOpen(WebSocket webSocket, Response response)
 	{
-		isConnecting = false;
+		isConnecting.set(false);
+		established = false;
+		lastSeq = -1;
+		awaitingResync = false;
+		binary = false;
+		damageRateAccepted = false;
+		filtering = false;
 		log.info("WebSocket connected to {}", serverUrl);
+
+		// Anything queued for the previous connection is stale; only the current join state carries over
+		sender.clear();
+		sendHello(webSocket);
+		synchronized (this)
+		{
+			if (joinedWorld != -1)
+			{
+				log.debug("Replaying join for world {} chunk {}", joinedWorld, joinedChunk);
+				sender.enqueue(CrabScouterSender.Type.JOIN, joinedWorld, joinedChunk, 0);
+			}
+			else
+			{
+				// A join answers with a snapshot; listeners that haven't joined ask for one so they don't show
+				// stale worlds until the first patch reveals the gap
+				sendResync();
+			}
+		}
+		sender.setConnected(true);
+
 		plugin.onWebSocketConnected();
 	}
 
+	private void sendHello(WebSocket webSocket)
+	{
+		// Older servers ignore hello and never answer with welcome, so the connection stays on JSON
+		JsonArray capabilities = new JsonArray();
+		capabilities.add(CrabScouterBinaryProtocol.CAPABILITY);
+		capabilities.add(HealthPredictor.CAPABILITY);
+		capabilities.add(CrabScouterCompression.CAPABILITY);
+		capabilities.add(WorldFilter.CAPABILITY);
+
+		JsonObject message = new JsonObject();
+		message.addProperty("type", "hello");
+		message.addProperty("protocol", PROTOCOL_VERSION);
+		message.add("capabilities", capabilities);
+
+		webSocket.send(gson.toJson(message));
+		plugin.getMetrics().messagesOut.increment();
+		log.debug("Sent hello with capabilities {}", capabilities);
+	}
+
 	@Override
 	public void onMessage(WebSocket webSocket, String text)
 	{
 		log.debug("Received message: {}", text);
+		CrabScouterMetrics metrics = plugin.getMetrics();
+		metrics.messagesIn.increment();
+		int size = utf8Length(text);
+		metrics.bytesIn.add(size);
+		metrics.messageSize.record(size);
+
+		long start = System.nanoTime();
 		try
 		{
-			JsonObject message = new JsonParser().parse(text).getAsJsonObject();
-			String type = message.get("type").getAsString();
+			decoder.decode(text);
+			dispatch();
+			metrics.messageParse.record(System.nanoTime() - start);
+		}
+		catch (Exception e)
+		{
+			log.error("Error parsing WebSocket message: {}", text, e);
+		}
+	}
+
+	@Override
+	public void onMessage(WebSocket webSocket, ByteString bytes)
+	{
+		log.debug("Received binary message of {} bytes", bytes.size());
+		CrabScouterMetrics metrics = plugin.getMetrics();
+		metrics.messagesIn.increment();
+		metrics.bytesIn.add(bytes.size());
+		metrics.messageSize.record(bytes.size());
 
-			switch (type)
+		long start = System.nanoTime();
+		try
+		{
+			decoder.decode(bytes.asByteBuffer());
+			if (decoder.getInflatedSize() > 0)
 			{
-				case "role":
-					boolean isReporter = message.get("isReporter").getAsBoolean();
-					plugin.onRoleAssigned(isReporter);
-					break;
-
-				case "update":
-					List<WorldData> worlds = parseWorldsUpdate(message);
-					log.debug("Received update with {} worlds", worlds.size());
-					plugin.onWorldsUpdate(worlds);
-					break;
-
-				default:
-					log.warn("Unknown message type: {}", type);
+				metrics.compressedBytesIn.add(bytes.size());
+				metrics.inflatedBytesIn.add(decoder.getInflatedSize());
 			}
+			dispatch();
+			metrics.messageParse.record(System.nanoTime() - start);
 		}
 		catch (Exception e)
 		{
-			log.error("Error parsing WebSocket message: {}", text, e);
+			log.error("Error parsing binary WebSocket message of {} bytes", bytes.size(), e);
 		}
 	}
 
-	private List<WorldData> parseWorldsUpdate(JsonObject message)
+	// Size of a text frame on the wire, counted without encoding it
+	static int utf8Length(String text)
 	{
-		List<WorldData> worlds = new ArrayList<>();
-		JsonArray worldsArray = message.getAsJsonArray("worlds");
+		int length = text.length();
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c >= 0x800)
+			{
+				// Each half of a surrogate pair adds one byte to make up the pair's four
+				length += Character.isSurrogate(c) ? 1 : 2;
+			}
+			else if (c >= 0x80)
+			{
+				length++;
+			}
+		}
+		return length;
+	}
+
+	private void dispatch()
+	{
+		String type = decoder.getType();
+		if (type == null)
+		{
+			log.warn("Received message without a type");
+			return;
+		}
+
+		if (!established)
+		{
+			established = true;
+			reconnectPolicy.onSuccess();
+		}
 
-		for (int i = 0; i < worldsArray.size(); i++)
+		switch (type)
 		{
-			JsonObject worldObj = worldsArray.get(i).getAsJsonObject();
-			worlds.add(new WorldData(
-				worldObj.get("world").getAsInt(),
-				worldObj.get("chunk").getAsInt(),
-				worldObj.get("health").getAsInt(),
-				worldObj.get("totalPlayers").getAsInt(),
-				worldObj.get("attackingPlayers").getAsInt(),
-				worldObj.get("lastUpdate").getAsLong()
-			));
+			case "welcome":
+				binary = decoder.getCapabilities().contains(CrabScouterBinaryProtocol.CAPABILITY);
+				damageRateAccepted = decoder.getCapabilities().contains(HealthPredictor.CAPABILITY);
+				filtering = decoder.getCapabilities().contains(WorldFilter.CAPABILITY);
+				log.debug("Server accepted capabilities {}", decoder.getCapabilities());
+				// A server that filters sends us everything until told otherwise
+				WorldFilter current = filter;
+				if (filtering && !current.isAll())
+				{
+					sender.enqueueSubscribe(current);
+				}
+				break;
+
+			case "role":
+				plugin.onRoleAssigned(decoder.isReporter());
+				break;
+
+			case "update":
+				// Legacy full update without sequence numbers
+				WorldBatch worlds = decoder.getWorlds();
+				log.debug("Received update with {} worlds", worlds.size());
+				plugin.onWorldsSnapshot(worlds);
+				break;
+
+			case "snapshot":
+				handleSnapshot();
+				break;
+
+			case "patch":
+				handlePatch();
+				break;
+
+			default:
+				log.warn("Unknown message type: {}", type);
+		}
+	}
+
+	private void handleSnapshot()
+	{
+		WorldBatch worlds = decoder.getWorlds();
+		lastSeq = decoder.getSeq();
+		awaitingResync = false;
+		log.debug("Received snapshot seq {} with {} worlds", lastSeq, worlds.size());
+		plugin.onWorldsSnapshot(worlds);
+	}
+
+	private void handlePatch()
+	{
+		long seq = decoder.getSeq();
+
+		if (lastSeq != -1 && seq <= lastSeq)
+		{
+			log.debug("Ignoring duplicate patch seq {} (last {})", seq, lastSeq);
+			return;
+		}
+
+		if (lastSeq == -1 || seq != lastSeq + 1)
+		{
+			if (!awaitingResync)
+			{
+				log.debug("Patch seq {} does not follow {}, requesting resync", seq, lastSeq);
+				sendResync();
+			}
+			else if (nanoTime() - resyncRequestedAt >= RESYNC_TIMEOUT_NANOS)
+			{
+				// The request or its snapshot was lost, or the server ignored it
+				log.debug("No snapshot since requesting a resync after seq {}, asking again", lastSeq);
+				sendResync();
+			}
+			return;
 		}
 
-		return worlds;
+		WorldBatch upserts = decoder.getWorlds();
+		int[] removes = decoder.getRemoves();
+
+		lastSeq = seq;
+		log.debug("Received patch seq {} with {} upserts and {} removes", seq, upserts.size(), removes.length);
+		plugin.onWorldsPatch(upserts, removes);
+	}
+
+	// Overridden by tests to control time
+	long nanoTime()
+	{
+		return System.nanoTime();
 	}
 
 	@Override
 	public void onClosing(WebSocket webSocket, int code, String reason)
 	{
 		log.debug("WebSocket closing: {} - {}", code, reason);
+		// OkHttp only calls onClosed once we answer the server's close frame
+		webSocket.close(1000, null);
 	}
 
 	@Override
 	public void onClosed(WebSocket webSocket, int code, String reason)
 	{
-		this.webSocket = null;
-		isConnecting = false;
+		if (!release(webSocket))
+		{
+			log.debug("Ignoring close of a replaced socket: {} - {}", code, reason);
+			return;
+		}
+
+		isConnecting.set(false);
+		sender.setConnected(false);
 		log.info("WebSocket closed: {} - {}", code, reason);
-		plugin.onWebSocketDisconnected();
+
+		if (code == CLOSE_TRY_AGAIN_LATER)
+		{
+			try
+			{
+				reconnectPolicy.setRetryAfter(TimeUnit.SECONDS.toMillis(Long.parseLong(reason.trim())));
+			}
+			catch (NumberFormatException e)
+			{
+				log.debug("Ignoring malformed retry-after close reason: {}", reason);
+			}
+		}
 
 		scheduleReconnect();
+		plugin.onWebSocketDisconnected();
 	}
 
 	@Override
 	public void onFailure(WebSocket webSocket, Throwable t, Response response)
 	{
-		this.webSocket = null;
-		isConnecting = false;
+		if (!release(webSocket))
+		{
+			log.debug("Ignoring failure of a replaced socket", t);
+			return;
+		}
+
+		isConnecting.set(false);
+		sender.setConnected(false);
 		log.error("WebSocket error", t);
-		plugin.onWebSocketDisconnected();
+
+		String retryAfter = response != null ? response.header("Retry-After") : null;
+		if (retryAfter != null)
+		{
+			try
+			{
+				reconnectPolicy.setRetryAfter(TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+			}
+			catch (NumberFormatException e)
+			{
+				log.debug("Ignoring non-numeric Retry-After header: {}", retryAfter);
+			}
+		}
 
 		scheduleReconnect();
+		plugin.onWebSocketDisconnected();
 	}
 
-	private void scheduleReconnect()
+	// Forgets the socket if it is still the current one. A late callback from a socket that was closed or
+	// replaced must not touch the connection that replaced it.
+	private synchronized boolean release(WebSocket socket)
+	{
+		if (socket != webSocket)
+		{
+			return false;
+		}
+		webSocket = null;
+		return true;
+	}
+
+	private synchronized void scheduleReconnect()
 	{
 		if (!shouldReconnect)
 		{
 			return;
 		}
 
-		log.debug("Scheduling reconnect in {} seconds", RECONNECT_DELAY_SECONDS);
-		executor.schedule(this::connect, RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
+		plugin.getMetrics().reconnects.increment();
+		long delay = reconnectPolicy.nextDelayMillis();
+		log.debug("Scheduling reconnect in {} ms (circuit {})", delay, reconnectPolicy.getState());
+		reconnectFuture = executor.schedule(() ->
+		{
+			reconnectPolicy.onAttempt();
+			plugin.onReconnectAttempt();
+			connect();
+		}, delay, TimeUnit.MILLISECONDS);
 	}
 }
-
@@ -0,0 +1,89 @@
+package com.crabscouter;
+
+import java.util.function.IntConsumer;
+
+// Hashed timer wheel of per-slot deadlines with one second resolution. Each wheel position is a bitset of the
+// store slots due in that second (or a whole number of turns later), so scheduling is O(1) and advancing only
+// looks at the positions that passed. Not thread safe; WorldStore drives it under its lock.
+final class ExpiryWheel
+{
+	private static final long TICK_MILLIS = 1000;
+	private static final int POSITIONS = 128;
+
+	// A deadline of 0 means the slot isn't scheduled
+	private final long[] deadlines = new long[WorldStore.CAPACITY];
+	private final int[] positions = new int[WorldStore.CAPACITY];
+	private final long[][] wheel = new long[POSITIONS][WorldStore.CAPACITY / 64];
+	private long lastTick = -1;
+
+	void schedule(int slot, long deadline)
+	{
+		cancel(slot);
+		deadlines[slot] = deadline;
+		// Round up, so the position is never visited before the deadline; deadlines that already passed go in the
+		// next position to be visited
+		long due = (deadline + TICK_MILLIS - 1) / TICK_MILLIS;
+		long tick = lastTick == -1 ? due : Math.max(due, lastTick + 1);
+		positions[slot] = position(tick);
+		wheel[positions[slot]][slot >>> 6] |= 1L << slot;
+	}
+
+	void cancel(int slot)
+	{
+		if (deadlines[slot] == 0)
+		{
+			return;
+		}
+
+		deadlines[slot] = 0;
+		wheel[positions[slot]][slot >>> 6] &= ~(1L << slot);
+	}
+
+	// Calls expired for every slot whose deadline is at or before now, and returns how many there were
+	int advance(long now, IntConsumer expired)
+	{
+		long tick = now / TICK_MILLIS;
+		if (lastTick == -1)
+		{
+			lastTick = tick - POSITIONS;
+		}
+		if (tick <= lastTick)
+		{
+			return 0;
+		}
+
+		// After a gap longer than a full turn every position is due once
+		long from = Math.max(lastTick + 1, tick - POSITIONS + 1);
+		lastTick = tick;
+
+		int count = 0;
+		for (long t = from; t <= tick; t++)
+		{
+			long[] bits = wheel[position(t)];
+			for (int w = 0; w < bits.length; w++)
+			{
+				long due = bits[w];
+				while (due != 0)
+				{
+					int slot = (w << 6) + Long.numberOfTrailingZeros(due);
+					due &= due - 1;
+
+					// Later turns of the wheel share this position
+					if (deadlines[slot] <= now)
+					{
+						bits[w] &= ~(1L << slot);
+						deadlines[slot] = 0;
+						expired.accept(slot);
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	private static int position(long tick)
+	{
+		return (int) (tick & (POSITIONS - 1));
+	}
+}
@@ -0,0 +1,71 @@
+package com.crabscouter;
+
+// Dead reckoning of crab health between reports. A report carries the health and a damage rate, and everyone
+// extrapolates health = reported - rate * elapsed from it. The reporter runs the same prediction and only
+// sends a new report once what it observes drifts more than a tolerance away from it. Servers that don't
+// accept the capability get a zero rate, which leaves the prediction flat at the last reported health.
+public class HealthPredictor
+{
+	public static final String CAPABILITY = "damage-rate-v1";
+
+	// Damage rates are in hundredths of a health percent per second
+	public static final int MAX_DAMAGE_RATE = 10_000;
+
+	private static final long MIN_RATE_WINDOW_MILLIS = 1_000;
+
+	private int reportedHealth = -1;
+	private int reportedRate;
+	private long reportedAt;
+
+	public static int predict(int health, int damageRate, long elapsedMillis)
+	{
+		if (damageRate <= 0 || elapsedMillis <= 0)
+		{
+			return health;
+		}
+
+		long lost = damageRate * elapsedMillis / 100_000L;
+		return (int) Math.max(0, health - lost);
+	}
+
+	public void reset()
+	{
+		reportedHealth = -1;
+		reportedRate = 0;
+		reportedAt = 0;
+	}
+
+	// How far the observed health is from what listeners currently display
+	public int divergence(int health, long now)
+	{
+		if (reportedHealth == -1)
+		{
+			return Integer.MAX_VALUE;
+		}
+		return Math.abs(health - predict(reportedHealth, reportedRate, now - reportedAt));
+	}
+
+	// Average damage rate since the last report; a heal or respawn resets it to zero
+	public int measureRate(int health, long now)
+	{
+		long elapsed = now - reportedAt;
+		if (reportedHealth == -1 || health > reportedHealth)
+		{
+			return 0;
+		}
+		if (elapsed < MIN_RATE_WINDOW_MILLIS)
+		{
+			return reportedRate;
+		}
+
+		long rate = (reportedHealth - health) * 100_000L / elapsed;
+		return (int) Math.min(MAX_DAMAGE_RATE, rate);
+	}
+
+	public void onReported(int health, int damageRate, long now)
+	{
+		reportedHealth = health;
+		reportedRate = damageRate;
+		reportedAt = now;
+	}
+}
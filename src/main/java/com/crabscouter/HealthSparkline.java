@@ -0,0 +1,96 @@
+package com.crabscouter;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import javax.swing.JComponent;
+import net.runelite.client.ui.ColorScheme;
+
+// A world's health over the last few minutes of its history. The line is drawn into a cached image only when
+// the world has a new sample; every other repaint is a single drawImage.
+class HealthSparkline extends JComponent
+{
+	private static final int WIDTH = 24;
+	private static final int HEIGHT = 12;
+	private static final long WINDOW_MILLIS = 10 * 60 * 1000;
+
+	private final int world;
+	private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+	private final int[] buckets = new int[WIDTH / 2];
+	// Newest sample drawn into the image
+	private long drawn = -1;
+
+	HealthSparkline(int world)
+	{
+		this.world = world;
+		setOpaque(false);
+		setPreferredSize(new Dimension(WIDTH, HEIGHT));
+	}
+
+	void update(WorldHistory history)
+	{
+		long latest = history.getLatest(world);
+		if (latest == drawn)
+		{
+			return;
+		}
+
+		drawn = latest;
+		history.downsample(world, WorldHistory.Field.HEALTH, latest + 1 - WINDOW_MILLIS, latest + 1, buckets);
+		redraw();
+		repaint();
+	}
+
+	private void redraw()
+	{
+		Graphics2D g = image.createGraphics();
+		try
+		{
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, WIDTH, HEIGHT);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setStroke(new BasicStroke(1f));
+			g.setColor(ColorScheme.LIGHT_GRAY_COLOR);
+
+			// Buckets without samples are bridged by joining the points either side
+			int step = WIDTH / buckets.length;
+			int lastX = -1;
+			int lastY = -1;
+			for (int b = 0; b < buckets.length; b++)
+			{
+				if (buckets[b] < 0)
+				{
+					continue;
+				}
+
+				int x = b * step + step / 2;
+				int y = (HEIGHT - 1) - buckets[b] * (HEIGHT - 1) / 100;
+				if (lastX >= 0)
+				{
+					g.drawLine(lastX, lastY, x, y);
+				}
+				else
+				{
+					g.fillRect(x, y, 1, 1);
+				}
+				lastX = x;
+				lastY = y;
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+
+	@Override
+	protected void paintComponent(Graphics g)
+	{
+		g.drawImage(image, 0, (getHeight() - HEIGHT) / 2, null);
+	}
+}
@@ -0,0 +1,110 @@
+package com.crabscouter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Allocation-free log-linear histogram in the style of HdrHistogram: every power of two is split into
+// SUB_BUCKETS linear buckets, bounding the relative error of a reported value to 1/SUB_BUCKETS.
+// Recording is lock-free and safe from any thread.
+public class Histogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+
+		counts.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value))
+		{
+			// retry
+		}
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	public long getMean()
+	{
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / n;
+	}
+
+	// Lower bound of the bucket holding the given percentile (0-100)
+	public long getPercentile(double percentile)
+	{
+		long n = count.get();
+		if (n == 0)
+		{
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if (seen >= target)
+			{
+				return bucketLowerBound(i);
+			}
+		}
+		return max.get();
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long bucketLowerBound(int index)
+	{
+		if (index < SUB_BUCKETS)
+		{
+			return index;
+		}
+
+		int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS);
+	}
+}
@@ -0,0 +1,98 @@
+package com.crabscouter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.World;
+import net.runelite.client.util.WorldUtil;
+import net.runelite.http.api.worlds.WorldResult;
+
+// Ready-made hop targets for every world in the scouting feed, so a hop needs no world list lookup and no
+// client.createWorld() when it is requested. Only touched on the client thread.
+@Slf4j
+public class HopTargetCache
+{
+	private final Client client;
+	private final World[] targets = new World[WorldStore.CAPACITY];
+	// The world list entry each target was built from, to tell when the list changed under it
+	private final net.runelite.http.api.worlds.World[] sources = new net.runelite.http.api.worlds.World[WorldStore.CAPACITY];
+
+	public HopTargetCache(Client client)
+	{
+		this.client = client;
+	}
+
+	public World get(int world)
+	{
+		return WorldStore.inRange(world) ? targets[world - WorldStore.MIN_WORLD] : null;
+	}
+
+	// Whether every world in the snapshot already has a target
+	public boolean covers(WorldStore.Snapshot snapshot)
+	{
+		for (WorldData data : snapshot.worlds())
+		{
+			if (targets[data.getWorld() - WorldStore.MIN_WORLD] == null)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Builds targets for the snapshot's worlds and drops the rest. Targets whose world list entry is unchanged
+	// are kept as they are.
+	public void rebuild(WorldResult worldResult, WorldStore.Snapshot snapshot)
+	{
+		boolean[] wanted = new boolean[WorldStore.CAPACITY];
+		int built = 0;
+
+		for (WorldData data : snapshot.worlds())
+		{
+			int i = data.getWorld() - WorldStore.MIN_WORLD;
+			wanted[i] = true;
+
+			net.runelite.http.api.worlds.World source = worldResult.findWorld(data.getWorld());
+			if (source == null)
+			{
+				targets[i] = null;
+				sources[i] = null;
+				continue;
+			}
+			if (source == sources[i])
+			{
+				continue;
+			}
+
+			World target = client.createWorld();
+			target.setActivity(source.getActivity());
+			target.setAddress(source.getAddress());
+			target.setId(source.getId());
+			target.setPlayerCount(source.getPlayers());
+			target.setLocation(source.getLocation());
+			target.setTypes(WorldUtil.toWorldTypes(source.getTypes()));
+			targets[i] = target;
+			sources[i] = source;
+			built++;
+		}
+
+		for (int i = 0; i < targets.length; i++)
+		{
+			if (!wanted[i])
+			{
+				targets[i] = null;
+				sources[i] = null;
+			}
+		}
+
+		log.debug("Hop targets rebuilt, {} new", built);
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < targets.length; i++)
+		{
+			targets[i] = null;
+			sources[i] = null;
+		}
+	}
+}
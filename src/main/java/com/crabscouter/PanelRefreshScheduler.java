@@ -0,0 +1,61 @@
+package com.crabscouter;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+import javax.swing.SwingUtilities;
+
+// Coalesces panel refresh requests: at most one refresh is pending at a time, so any number of markDirty()
+// calls before it runs cost one refresh, and refreshes are spaced at least 1/rate seconds apart.
+public class PanelRefreshScheduler
+{
+	private final Runnable refresh;
+	private final IntSupplier rate;
+	private final ScheduledExecutorService executor;
+
+	private final AtomicBoolean pending = new AtomicBoolean();
+	// nanoTime has an arbitrary origin, so "never refreshed" can't be a lastRefreshNanos value
+	private volatile boolean refreshed;
+	private volatile long lastRefreshNanos;
+
+	public PanelRefreshScheduler(Runnable refresh, IntSupplier rate, ScheduledExecutorService executor)
+	{
+		this.refresh = refresh;
+		this.rate = rate;
+		this.executor = executor;
+	}
+
+	public void markDirty()
+	{
+		if (!pending.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		long delayNanos = 0;
+		if (refreshed)
+		{
+			long minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate.getAsInt());
+			delayNanos = lastRefreshNanos + minIntervalNanos - System.nanoTime();
+		}
+
+		if (delayNanos <= 0)
+		{
+			SwingUtilities.invokeLater(this::run);
+		}
+		else
+		{
+			executor.schedule(() -> SwingUtilities.invokeLater(this::run), delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void run()
+	{
+		// Cleared before refreshing, so changes made while the refresh reads state schedule another one
+		pending.set(false);
+		lastRefreshNanos = System.nanoTime();
+		refreshed = true;
+		refresh.run();
+	}
+}
@@ -0,0 +1,136 @@
+package com.crabscouter;
+
+import java.util.HashSet;
+import java.util.Set;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.coords.WorldPoint;
+
+// Keeps the player and attacker counts for the current crab region up to date from spawn, despawn and
+// interacting events, so reading them is O(1) instead of a scan of every loaded player each tick.
+// Region membership is checked when a player spawns or changes target, and resync() rescans the loaded
+// players now and then to pick up players who walked in or out without doing either.
+public class PlayerTracker
+{
+	private final Set<Player> players = new HashSet<>();
+	private final Set<Player> attackers = new HashSet<>();
+
+	private int region = -1;
+	private NPC crab;
+
+	// Starts tracking a region, seeding the counts with one pass over the currently loaded players
+	public void reset(int region, Iterable<? extends Player> loadedPlayers)
+	{
+		clear();
+		this.region = region;
+		resync(loadedPlayers);
+	}
+
+	// Rebuilds the counts from the loaded players, keeping the region and crab
+	public void resync(Iterable<? extends Player> loadedPlayers)
+	{
+		players.clear();
+		attackers.clear();
+		if (loadedPlayers != null)
+		{
+			for (Player player : loadedPlayers)
+			{
+				onPlayerSpawned(player);
+			}
+		}
+	}
+
+	public void clear()
+	{
+		players.clear();
+		attackers.clear();
+		region = -1;
+		crab = null;
+	}
+
+	public void setCrab(NPC crab)
+	{
+		if (this.crab == crab)
+		{
+			return;
+		}
+
+		this.crab = crab;
+		attackers.clear();
+		if (crab != null)
+		{
+			for (Player player : players)
+			{
+				if (player.getInteracting() == crab)
+				{
+					attackers.add(player);
+				}
+			}
+		}
+	}
+
+	public void onPlayerSpawned(Player player)
+	{
+		if (player == null || region == -1)
+		{
+			return;
+		}
+
+		if (inRegion(player))
+		{
+			players.add(player);
+			if (crab != null && player.getInteracting() == crab)
+			{
+				attackers.add(player);
+			}
+		}
+	}
+
+	public void onPlayerDespawned(Player player)
+	{
+		players.remove(player);
+		attackers.remove(player);
+	}
+
+	public void onInteractingChanged(Actor source, Actor target)
+	{
+		if (!(source instanceof Player) || region == -1)
+		{
+			return;
+		}
+
+		Player player = (Player) source;
+		if (!inRegion(player))
+		{
+			onPlayerDespawned(player);
+			return;
+		}
+
+		players.add(player);
+		if (crab != null && target == crab)
+		{
+			attackers.add(player);
+		}
+		else
+		{
+			attackers.remove(player);
+		}
+	}
+
+	public int getTotalPlayers()
+	{
+		return players.size();
+	}
+
+	public int getAttackingPlayers()
+	{
+		return attackers.size();
+	}
+
+	private boolean inRegion(Player player)
+	{
+		WorldPoint location = player.getWorldLocation();
+		return location != null && location.getRegionID() == region;
+	}
+}
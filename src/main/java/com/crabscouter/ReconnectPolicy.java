@@ -0,0 +1,92 @@
+package com.crabscouter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Reconnect delays using "decorrelated jitter" exponential backoff: each delay is drawn uniformly from
+// [BASE, previous * 3] and capped, so clients that dropped together spread out instead of retrying in
+// lockstep. A server retry-after hint acts as a lower bound. After FAILURE_THRESHOLD consecutive failures
+// the circuit opens and the client waits OPEN_DURATION before a single half-open probe.
+public class ReconnectPolicy
+{
+	public enum State
+	{
+		// Retrying with backoff
+		CLOSED,
+		// Too many failures, waiting out the cool-down
+		OPEN,
+		// Cool-down elapsed, the next attempt decides whether to close or reopen the circuit
+		HALF_OPEN
+	}
+
+	static final long BASE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+	static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(2);
+	static final long OPEN_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(30);
+	static final int FAILURE_THRESHOLD = 6;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long previousDelayMillis = BASE_DELAY_MILLIS;
+	private long retryAfterMillis;
+
+	public synchronized State getState()
+	{
+		return state;
+	}
+
+	public synchronized void onSuccess()
+	{
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		previousDelayMillis = BASE_DELAY_MILLIS;
+		retryAfterMillis = 0;
+	}
+
+	public synchronized void setRetryAfter(long millis)
+	{
+		retryAfterMillis = Math.min(Math.max(0, millis), MAX_RETRY_AFTER_MILLIS);
+	}
+
+	// Records a failed or dropped connection and returns how long to wait before the next attempt
+	public synchronized long nextDelayMillis()
+	{
+		consecutiveFailures++;
+
+		long delay;
+		if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD)
+		{
+			// Open (or re-open) the circuit; the attempt after the cool-down is the half-open probe
+			state = State.OPEN;
+			delay = jitter(OPEN_DURATION_MILLIS / 2, OPEN_DURATION_MILLIS);
+		}
+		else
+		{
+			delay = Math.min(MAX_DELAY_MILLIS, jitter(BASE_DELAY_MILLIS, previousDelayMillis * 3));
+			previousDelayMillis = delay;
+		}
+
+		if (retryAfterMillis > 0)
+		{
+			// Honour the hint, with a little jitter so everyone told the same value doesn't return at once
+			delay = Math.max(delay, retryAfterMillis + jitter(0, retryAfterMillis / 10));
+			retryAfterMillis = 0;
+		}
+
+		return delay;
+	}
+
+	// Called when a scheduled attempt starts
+	public synchronized void onAttempt()
+	{
+		if (state == State.OPEN)
+		{
+			state = State.HALF_OPEN;
+		}
+	}
+
+	private static long jitter(long min, long max)
+	{
+		return max <= min ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+	}
+}
@@ -0,0 +1,59 @@
+package com.crabscouter;
+
+import java.util.Arrays;
+
+// Store slots ordered by a small non-negative key, ties broken by slot (and so by world). Each entry packs
+// (key << 16 | slot), so the order is plain long order: a change is a binary search plus an array shift,
+// and reading the order in either direction is a straight walk over the array.
+final class SortIndex
+{
+	private final long[] entries = new long[WorldStore.CAPACITY];
+	private int size;
+
+	static int key(long entry)
+	{
+		return (int) (entry >>> 16);
+	}
+
+	static int slot(long entry)
+	{
+		return (int) (entry & 0xFFFF);
+	}
+
+	void insert(int key, int slot)
+	{
+		long entry = pack(key, slot);
+		int i = Arrays.binarySearch(entries, 0, size, entry);
+		if (i >= 0)
+		{
+			return;
+		}
+
+		i = -i - 1;
+		System.arraycopy(entries, i, entries, i + 1, size - i);
+		entries[i] = entry;
+		size++;
+	}
+
+	void remove(int key, int slot)
+	{
+		int i = Arrays.binarySearch(entries, 0, size, pack(key, slot));
+		if (i < 0)
+		{
+			return;
+		}
+
+		System.arraycopy(entries, i + 1, entries, i, size - i - 1);
+		size--;
+	}
+
+	long[] toArray()
+	{
+		return Arrays.copyOf(entries, size);
+	}
+
+	private static long pack(int key, int slot)
+	{
+		return ((long) key << 16) | slot;
+	}
+}
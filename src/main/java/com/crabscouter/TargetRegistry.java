@@ -0,0 +1,264 @@
+package com.crabscouter;
+
+import com.google.gson.stream.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import lombok.extern.slf4j.Slf4j;
+
+// The activities we scout, loaded from targets.json: which NPCs to track, by id or by name, and the named
+// regions they are fought in. Each activity's name is only for whoever edits the file. Whether a region is
+// scouted is one bit test, so the per-tick area check doesn't grow with the number of activities.
+@Slf4j
+public class TargetRegistry
+{
+	private static final String RESOURCE = "/targets.json";
+	static final String UNKNOWN_AREA = "Unknown";
+	// Region ids are 8 bits of x and 8 bits of y
+	private static final int REGION_COUNT = 1 << 16;
+
+	private static TargetRegistry defaultRegistry;
+
+	private static class Area
+	{
+		private final int region;
+		private final String name;
+		// Position of the name among all area names, for sorting by area
+		private int order;
+
+		Area(int region, String name)
+		{
+			this.region = region;
+			this.name = name;
+		}
+	}
+
+	private final long[] scouted = new long[REGION_COUNT / 64];
+	private final Map<Integer, Area> areas = new HashMap<>();
+	private final Set<Integer> npcIds = new HashSet<>();
+	private final List<Pattern> namePatterns = new ArrayList<>();
+	private int unknownOrder;
+
+	private TargetRegistry()
+	{
+	}
+
+	// The registry bundled with the plugin, loaded on first use
+	public static synchronized TargetRegistry getDefault()
+	{
+		if (defaultRegistry == null)
+		{
+			try (InputStream in = TargetRegistry.class.getResourceAsStream(RESOURCE))
+			{
+				if (in == null)
+				{
+					throw new IOException("Missing " + RESOURCE);
+				}
+				defaultRegistry = load(new InputStreamReader(in, StandardCharsets.UTF_8));
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException("Failed to load target registry", e);
+			}
+			log.debug("Loaded {} scouted areas", defaultRegistry.areas.size());
+		}
+		return defaultRegistry;
+	}
+
+	static TargetRegistry load(Reader in) throws IOException
+	{
+		TargetRegistry registry = new TargetRegistry();
+		try (JsonReader reader = new JsonReader(in))
+		{
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				if (reader.nextName().equals("activities"))
+				{
+					reader.beginArray();
+					while (reader.hasNext())
+					{
+						registry.readActivity(reader);
+					}
+					reader.endArray();
+				}
+				else
+				{
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		registry.assignOrder();
+		return registry;
+	}
+
+	public boolean isScouted(int region)
+	{
+		return region >= 0 && region < REGION_COUNT && (scouted[region >>> 6] & (1L << region)) != 0;
+	}
+
+	public String getAreaName(int region)
+	{
+		Area area = getArea(region);
+		return area != null ? area.name : UNKNOWN_AREA;
+	}
+
+	// Sort key that orders regions the same way as their area names, unknown ones included
+	public int getAreaOrder(int region)
+	{
+		Area area = getArea(region);
+		return area != null ? area.order : unknownOrder;
+	}
+
+	// Regions of every area with the given name, ignoring case
+	public int[] getRegions(String areaName)
+	{
+		int[] result = new int[0];
+		for (Area area : areas.values())
+		{
+			if (area.name.equalsIgnoreCase(areaName))
+			{
+				result = Arrays.copyOf(result, result.length + 1);
+				result[result.length - 1] = area.region;
+			}
+		}
+		return result;
+	}
+
+	public boolean isTargetId(int npcId)
+	{
+		return npcIds.contains(npcId);
+	}
+
+	public boolean matchesName(String npcName)
+	{
+		for (Pattern pattern : namePatterns)
+		{
+			if (pattern.matcher(npcName).matches())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Area getArea(int region)
+	{
+		return isScouted(region) ? areas.get(region) : null;
+	}
+
+	private void readActivity(JsonReader reader) throws IOException
+	{
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "npcIds":
+					reader.beginArray();
+					while (reader.hasNext())
+					{
+						npcIds.add(reader.nextInt());
+					}
+					reader.endArray();
+					break;
+				case "namePattern":
+					String pattern = reader.nextString();
+					try
+					{
+						namePatterns.add(Pattern.compile(pattern));
+					}
+					catch (PatternSyntaxException e)
+					{
+						throw new IOException("Bad name pattern " + pattern, e);
+					}
+					break;
+				case "areas":
+					reader.beginArray();
+					while (reader.hasNext())
+					{
+						addArea(readArea(reader));
+					}
+					reader.endArray();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private void addArea(Area area) throws IOException
+	{
+		if (areas.put(area.region, area) != null)
+		{
+			throw new IOException("Region " + area.region + " listed twice");
+		}
+		scouted[area.region >>> 6] |= 1L << area.region;
+	}
+
+	private static Area readArea(JsonReader reader) throws IOException
+	{
+		int region = -1;
+		String name = null;
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "region":
+					region = reader.nextInt();
+					break;
+				case "name":
+					name = reader.nextString();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (region < 0 || region >= REGION_COUNT || name == null)
+		{
+			throw new IOException("Area needs a region id and a name");
+		}
+		return new Area(region, name);
+	}
+
+	private void assignOrder()
+	{
+		Set<String> names = new TreeSet<>();
+		names.add(UNKNOWN_AREA);
+		for (Area area : areas.values())
+		{
+			names.add(area.name);
+		}
+
+		Map<String, Integer> ranks = new HashMap<>();
+		for (String name : names)
+		{
+			ranks.put(name, ranks.size());
+		}
+
+		for (Area area : areas.values())
+		{
+			area.order = ranks.get(area.name);
+		}
+		unknownOrder = ranks.get(UNKNOWN_AREA);
+	}
+}
@@ -0,0 +1,85 @@
+package com.crabscouter;
+
+import java.util.Arrays;
+
+// Reusable struct-of-arrays buffer for world records decoded from a single message
+public class WorldBatch
+{
+	private int size;
+	private int[] world = new int[64];
+	private int[] chunk = new int[64];
+	private int[] health = new int[64];
+	private int[] totalPlayers = new int[64];
+	private int[] attackingPlayers = new int[64];
+	private int[] damageRate = new int[64];
+	private long[] lastUpdate = new long[64];
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public void add(int world, int chunk, int health, int totalPlayers, int attackingPlayers, int damageRate, long lastUpdate)
+	{
+		if (size == this.world.length)
+		{
+			int capacity = size * 2;
+			this.world = Arrays.copyOf(this.world, capacity);
+			this.chunk = Arrays.copyOf(this.chunk, capacity);
+			this.health = Arrays.copyOf(this.health, capacity);
+			this.totalPlayers = Arrays.copyOf(this.totalPlayers, capacity);
+			this.attackingPlayers = Arrays.copyOf(this.attackingPlayers, capacity);
+			this.damageRate = Arrays.copyOf(this.damageRate, capacity);
+			this.lastUpdate = Arrays.copyOf(this.lastUpdate, capacity);
+		}
+
+		this.world[size] = world;
+		this.chunk[size] = chunk;
+		this.health[size] = health;
+		this.totalPlayers[size] = totalPlayers;
+		this.attackingPlayers[size] = attackingPlayers;
+		this.damageRate[size] = damageRate;
+		this.lastUpdate[size] = lastUpdate;
+		size++;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getWorld(int i)
+	{
+		return world[i];
+	}
+
+	public int getChunk(int i)
+	{
+		return chunk[i];
+	}
+
+	public int getHealth(int i)
+	{
+		return health[i];
+	}
+
+	public int getTotalPlayers(int i)
+	{
+		return totalPlayers[i];
+	}
+
+	public int getAttackingPlayers(int i)
+	{
+		return attackingPlayers[i];
+	}
+
+	public int getDamageRate(int i)
+	{
+		return damageRate[i];
+	}
+
+	public long getLastUpdate(int i)
+	{
+		return lastUpdate[i];
+	}
+}
@@ -1,44 +1,79 @@
 package com.crabscouter;
 
-import lombok.Data;
-
-@Data
+// Read-only view of one world in a published WorldStore snapshot
 public class WorldData
 {
-	private int world;
-	private int chunk;
-	private int health;
-	private int totalPlayers;
-	private int attackingPlayers;
-	private long lastUpdate;
+	private final WorldStore.Snapshot snapshot;
+	private final int index;
+
+	WorldData(WorldStore.Snapshot snapshot, int index)
+	{
+		this.snapshot = snapshot;
+		this.index = index;
+	}
+
+	public int getWorld()
+	{
+		return index + WorldStore.MIN_WORLD;
+	}
+
+	public int getChunk()
+	{
+		return snapshot.getChunk(index);
+	}
+
+	public int getHealth()
+	{
+		return snapshot.getHealth(index);
+	}
+
+	public int getTotalPlayers()
+	{
+		return snapshot.getTotalPlayers(index);
+	}
 
-	public WorldData(int world, int chunk, int health, int totalPlayers, int attackingPlayers, long lastUpdate)
+	public int getAttackingPlayers()
 	{
-		this.world = world;
-		this.chunk = chunk;
-		this.health = health;
-		this.totalPlayers = totalPlayers;
-		this.attackingPlayers = attackingPlayers;
-		this.lastUpdate = lastUpdate;
+		return snapshot.getAttackingPlayers(index);
 	}
 
+	// Hundredths of a health percent lost per second, as measured by the reporter
+	public int getDamageRate()
+	{
+		return snapshot.getDamageRate(index);
+	}
+
+	// Reported health extrapolated to now with the reporter's damage rate
+	public int getEstimatedHealth(long now)
+	{
+		return HealthPredictor.predict(getHealth(), getDamageRate(), now - getLastUpdate());
+	}
+
+	public long getLastUpdate()
+	{
+		return snapshot.getLastUpdate(index);
+	}
+
+	// Loaded from the previous session and not yet confirmed by the server
+	public boolean isRestored()
+	{
+		return snapshot.isRestored(index);
+	}
+
+	// Set by the store's expiry wheel rather than checked against the clock
 	public boolean isFresh()
 	{
-		return System.currentTimeMillis() - lastUpdate < 90_000;
+		return !snapshot.isStale(index);
 	}
 
 	public String getChunkName()
 	{
-		switch (chunk)
-		{
-			case 4913:
-				return "North";
-			case 4911:
-				return "West";
-			case 5424:
-				return "East";
-			default:
-				return "Unknown";
-		}
+		return TargetRegistry.getDefault().getAreaName(getChunk());
+	}
+
+	// Sort key that orders chunks the same way as their names
+	static int chunkOrder(int chunk)
+	{
+		return TargetRegistry.getDefault().getAreaOrder(chunk);
 	}
 }
@@ -0,0 +1,190 @@
+package com.crabscouter;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+// The world-state pipeline: server snapshots and patches go into the store, and each message is published
+// as one snapshot, so readers never see it half applied. Every published snapshot goes on to the recommender
+// and the history in order, and the store tick re-ranks the recommender as extrapolated health moves. Saving
+// to the warm-start file only happens once persistTo() has been given a file, so load tests and benchmarks
+// can build a feed without touching disk.
+@Slf4j
+public class WorldFeed
+{
+	// Changed world updates between saves of the warm-start file
+	private static final int SAVE_EVERY_UPDATES = 50;
+
+	@Getter
+	private final WorldStore store = new WorldStore();
+	@Getter
+	private final WorldHistory history = new WorldHistory();
+	private final WorldRecommender recommender = new WorldRecommender();
+
+	private WorldStoreFile file;
+	private Executor saveExecutor;
+	private int updatesSinceSave;
+
+	// Starts saving every SAVE_EVERY_UPDATES changes on the executor; null file stops saving
+	public synchronized void persistTo(WorldStoreFile file, Executor saveExecutor)
+	{
+		this.file = file;
+		this.saveExecutor = saveExecutor;
+		updatesSinceSave = 0;
+	}
+
+	public void setWeights(int health, int players, int freshness)
+	{
+		recommender.setWeights(health, players, freshness);
+		synchronized (store)
+		{
+			recommender.update(store.snapshot(), System.currentTimeMillis());
+		}
+	}
+
+	public void setFilter(WorldFilter filter)
+	{
+		recommender.setFilter(filter);
+		synchronized (store)
+		{
+			recommender.update(store.snapshot(), System.currentTimeMillis());
+		}
+	}
+
+	// Best world to hop to other than the given one, or -1
+	public int best(int excludeWorld)
+	{
+		return recommender.best(excludeWorld);
+	}
+
+	// Returns whether any world changed
+	public boolean applySnapshot(WorldBatch worlds)
+	{
+		boolean changed;
+		synchronized (store)
+		{
+			store.beginSnapshot();
+			changed = store.upsertAll(worlds);
+			changed |= store.endSnapshot();
+			publish(System.currentTimeMillis());
+		}
+		return onUpdate(changed);
+	}
+
+	public boolean applyPatch(WorldBatch upserts, int[] removes)
+	{
+		boolean changed;
+		synchronized (store)
+		{
+			changed = store.upsertAll(upserts);
+			for (int world : removes)
+			{
+				changed |= store.remove(world);
+			}
+			publish(System.currentTimeMillis());
+		}
+		return onUpdate(changed);
+	}
+
+	// Expires what went stale by now. Returns whether the panel needs redrawing: something expired, or
+	// extrapolated health moved without any message arriving.
+	public boolean tick(long now)
+	{
+		boolean expired;
+		synchronized (store)
+		{
+			expired = store.expire(now);
+			publish(now);
+		}
+		return expired || store.snapshot().isExtrapolating();
+	}
+
+	// Shows last session's worlds until the server sends a snapshot, which replaces them wholesale
+	public boolean restore()
+	{
+		WorldStoreFile source;
+		synchronized (this)
+		{
+			source = file;
+		}
+		if (source == null)
+		{
+			return false;
+		}
+
+		WorldBatch batch = new WorldBatch();
+		try
+		{
+			if (!source.read(batch))
+			{
+				return false;
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to read saved worlds", e);
+			return false;
+		}
+
+		boolean changed;
+		synchronized (store)
+		{
+			changed = store.restore(batch);
+			publish(System.currentTimeMillis());
+		}
+
+		log.debug("Restored {} worlds from the last session", batch.size());
+		return changed;
+	}
+
+	public void save()
+	{
+		WorldStoreFile target;
+		synchronized (this)
+		{
+			target = file;
+		}
+		WorldStore.Snapshot snapshot = store.snapshot();
+		if (target == null || snapshot.isEmpty())
+		{
+			return;
+		}
+
+		try
+		{
+			target.write(snapshot);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to save worlds", e);
+		}
+	}
+
+	// Caller holds the store lock, so the recommender and history see every snapshot in order
+	private void publish(long now)
+	{
+		store.publish();
+		WorldStore.Snapshot snapshot = store.snapshot();
+		recommender.update(snapshot, now);
+		history.record(snapshot);
+	}
+
+	private boolean onUpdate(boolean changed)
+	{
+		if (!changed)
+		{
+			return false;
+		}
+
+		synchronized (this)
+		{
+			if (file != null && ++updatesSinceSave >= SAVE_EVERY_UPDATES)
+			{
+				updatesSinceSave = 0;
+				saveExecutor.execute(this::save);
+			}
+		}
+		return true;
+	}
+}
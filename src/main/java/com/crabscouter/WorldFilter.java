@@ -0,0 +1,113 @@
+package com.crabscouter;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+// Which worlds the user wants to see: chunk regions and worlds (empty means any), a player cap and a health
+// floor (0 means none). Servers that accept the filter capability apply it to what they send us, and the
+// panel applies it too, for servers that don't and for worlds that arrived before a change.
+@Slf4j
+public final class WorldFilter
+{
+	public static final String CAPABILITY = "filter-v1";
+
+	public static final WorldFilter ALL = new WorldFilter(new int[0], new int[0], 0, 0);
+
+	@Getter
+	private final int[] chunks;
+	@Getter
+	private final int[] worlds;
+	@Getter
+	private final int maxPlayers;
+	@Getter
+	private final int minHealth;
+
+	public WorldFilter(int[] chunks, int[] worlds, int maxPlayers, int minHealth)
+	{
+		this.chunks = chunks.clone();
+		this.worlds = worlds.clone();
+		Arrays.sort(this.chunks);
+		Arrays.sort(this.worlds);
+		this.maxPlayers = Math.max(0, maxPlayers);
+		this.minHealth = Math.max(0, minHealth);
+	}
+
+	public static WorldFilter fromConfig(CrabScouterConfig config, TargetRegistry targets)
+	{
+		int[] chunks = new int[0];
+		for (String name : split(config.chunkFilter()))
+		{
+			int[] regions = targets.getRegions(name);
+			if (regions.length == 0)
+			{
+				log.debug("Ignoring unknown chunk {} in filter", name);
+				continue;
+			}
+			int n = chunks.length;
+			chunks = Arrays.copyOf(chunks, n + regions.length);
+			System.arraycopy(regions, 0, chunks, n, regions.length);
+		}
+
+		String[] worldNames = split(config.worldFilter());
+		int[] worlds = new int[worldNames.length];
+		int worldCount = 0;
+		for (String world : worldNames)
+		{
+			try
+			{
+				worlds[worldCount] = Integer.parseInt(world);
+				worldCount++;
+			}
+			catch (NumberFormatException e)
+			{
+				log.debug("Ignoring bad world {} in filter", world);
+			}
+		}
+
+		return new WorldFilter(chunks, Arrays.copyOf(worlds, worldCount), config.maxPlayers(), config.minHealth());
+	}
+
+	public boolean isAll()
+	{
+		return chunks.length == 0 && worlds.length == 0 && maxPlayers == 0 && minHealth == 0;
+	}
+
+	public boolean matches(int world, int chunk, int health, int totalPlayers)
+	{
+		return (chunks.length == 0 || Arrays.binarySearch(chunks, chunk) >= 0)
+			&& (worlds.length == 0 || Arrays.binarySearch(worlds, world) >= 0)
+			&& (maxPlayers == 0 || totalPlayers <= maxPlayers)
+			&& health >= minHealth;
+	}
+
+	public boolean matches(WorldData data)
+	{
+		return matches(data.getWorld(), data.getChunk(), data.getHealth(), data.getTotalPlayers());
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof WorldFilter))
+		{
+			return false;
+		}
+
+		WorldFilter other = (WorldFilter) o;
+		return maxPlayers == other.maxPlayers && minHealth == other.minHealth
+			&& Arrays.equals(chunks, other.chunks) && Arrays.equals(worlds, other.worlds);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * (31 * (31 * Arrays.hashCode(chunks) + Arrays.hashCode(worlds)) + maxPlayers) + minHealth;
+	}
+
+	private static String[] split(String list)
+	{
+		String trimmed = list == null ? "" : list.trim();
+		return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s*,\\s*");
+	}
+}
@@ -0,0 +1,145 @@
+package com.crabscouter;
+
+// Recent (timestamp, health, total, attacking) samples per world in preallocated primitive ring buffers. Every
+// world in the store range gets the same fixed number of slots, sized so the whole history stays within
+// MAX_BYTES; the oldest sample is overwritten once a world's ring is full. Written under the store lock as
+// snapshots are published, read from the EDT.
+public class WorldHistory
+{
+	public enum Field
+	{
+		HEALTH, TOTAL_PLAYERS, ATTACKING_PLAYERS
+	}
+
+	private static final int MAX_BYTES = 1024 * 1024;
+	// long timestamp, byte health, two shorts of players
+	private static final int SAMPLE_BYTES = 8 + 1 + 2 + 2;
+	static final int SAMPLES_PER_WORLD = MAX_BYTES / (WorldStore.CAPACITY * SAMPLE_BYTES);
+
+	private final long[] timestamps = new long[WorldStore.CAPACITY * SAMPLES_PER_WORLD];
+	private final byte[] health = new byte[WorldStore.CAPACITY * SAMPLES_PER_WORLD];
+	private final short[] totalPlayers = new short[WorldStore.CAPACITY * SAMPLES_PER_WORLD];
+	private final short[] attackingPlayers = new short[WorldStore.CAPACITY * SAMPLES_PER_WORLD];
+
+	// Per world: index of the next write within its ring, and how many samples it holds
+	private final int[] heads = new int[WorldStore.CAPACITY];
+	private final int[] counts = new int[WorldStore.CAPACITY];
+
+	// Appends a sample for every world the snapshot changed, skipping anything not newer than what is stored
+	public synchronized void record(WorldStore.Snapshot snapshot)
+	{
+		snapshot.forEachChanged(i ->
+		{
+			if (snapshot.isPresent(i) && !snapshot.isStale(i) && !snapshot.isRestored(i))
+			{
+				append(i, snapshot.getLastUpdate(i), snapshot.getHealth(i), snapshot.getTotalPlayers(i),
+					snapshot.getAttackingPlayers(i));
+			}
+		});
+	}
+
+	// Timestamp of the newest sample, or 0 if there is none
+	public synchronized long getLatest(int world)
+	{
+		if (!WorldStore.inRange(world))
+		{
+			return 0;
+		}
+
+		int i = world - WorldStore.MIN_WORLD;
+		return counts[i] == 0 ? 0 : timestamps[offset(i, heads[i] - 1)];
+	}
+
+	// Splits [from, to) into out.length equal buckets and stores the mean of the field's samples in each, or -1
+	// for a bucket without samples. Returns how many buckets had samples.
+	public synchronized int downsample(int world, Field field, long from, long to, int[] out)
+	{
+		for (int b = 0; b < out.length; b++)
+		{
+			out[b] = -1;
+		}
+		if (!WorldStore.inRange(world) || to <= from || out.length == 0)
+		{
+			return 0;
+		}
+
+		int i = world - WorldStore.MIN_WORLD;
+		int count = counts[i];
+		int first = heads[i] - count;
+		int filled = 0;
+
+		int bucket = -1;
+		long sum = 0;
+		int n = 0;
+		for (int k = 0; k < count; k++)
+		{
+			int o = offset(i, first + k);
+			long t = timestamps[o];
+			if (t < from || t >= to)
+			{
+				continue;
+			}
+
+			int b = (int) ((t - from) * out.length / (to - from));
+			if (b != bucket)
+			{
+				if (n > 0)
+				{
+					out[bucket] = (int) (sum / n);
+					filled++;
+				}
+				bucket = b;
+				sum = 0;
+				n = 0;
+			}
+			sum += value(field, o);
+			n++;
+		}
+		if (n > 0)
+		{
+			out[bucket] = (int) (sum / n);
+			filled++;
+		}
+		return filled;
+	}
+
+	private void append(int i, long timestamp, int h, int total, int attacking)
+	{
+		if (counts[i] > 0 && timestamps[offset(i, heads[i] - 1)] >= timestamp)
+		{
+			return;
+		}
+
+		int o = offset(i, heads[i]);
+		timestamps[o] = timestamp;
+		health[o] = (byte) h;
+		totalPlayers[o] = (short) total;
+		attackingPlayers[o] = (short) attacking;
+
+		heads[i] = (heads[i] + 1) % SAMPLES_PER_WORLD;
+		if (counts[i] < SAMPLES_PER_WORLD)
+		{
+			counts[i]++;
+		}
+	}
+
+	private int value(Field field, int o)
+	{
+		switch (field)
+		{
+			case TOTAL_PLAYERS:
+				return totalPlayers[o];
+			case ATTACKING_PLAYERS:
+				return attackingPlayers[o];
+			case HEALTH:
+			default:
+				return health[o];
+		}
+	}
+
+	// Array offset of the k-th slot of world i's ring; k may be negative or past the end and wraps
+	private static int offset(int i, int k)
+	{
+		return i * SAMPLES_PER_WORLD + Math.floorMod(k, SAMPLES_PER_WORLD);
+	}
+}
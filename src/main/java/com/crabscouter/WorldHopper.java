@@ -0,0 +1,244 @@
+package com.crabscouter;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.World;
+import net.runelite.api.widgets.ComponentID;
+import net.runelite.client.callback.ClientThread;
+
+// Hop state machine driven by client events. A request opens the world switcher if it isn't open and hops as
+// soon as WidgetLoaded says it is, then waits for the HOPPING game state. A request made while a hop is in
+// flight replaces one that hasn't been sent yet, or waits for the next login. A request for a world without a
+// hop target waits a few seconds for the world list to provide one; any other hop or request, or logging out,
+// drops it. Only touched on the client thread.
+@Slf4j
+public class WorldHopper
+{
+	enum State
+	{
+		IDLE, OPENING_SWITCHER, HOPPING
+	}
+
+	private static final int WORLD_SWITCHER_GROUP = ComponentID.WORLD_SWITCHER_WORLD_LIST >> 16;
+	private static final int MAX_OPEN_ATTEMPTS = 3;
+	private static final long OPEN_TIMEOUT_NANOS = 1_200_000_000L;
+	private static final long HOP_TIMEOUT_NANOS = 10_000_000_000L;
+	private static final long TARGET_TIMEOUT_NANOS = 5_000_000_000L;
+
+	private final Client client;
+	private final ClientThread clientThread;
+	private final CrabScouterMetrics metrics;
+	private final HopTargetCache targets;
+
+	@Getter
+	private State state = State.IDLE;
+	private World target;
+	private long requestedAt;
+	private long deadline;
+	private int openAttempts;
+
+	// Requested while a hop was already sent; started after the next login
+	private World queuedTarget;
+	private long queuedRequestedAt;
+
+	// Requested before its hop target existed; dropped at awaitDeadline
+	private int awaitedWorld = -1;
+	private long awaitedRequestedAt;
+	private long awaitDeadline;
+
+	public WorldHopper(Client client, ClientThread clientThread, CrabScouterMetrics metrics, HopTargetCache targets)
+	{
+		this.client = client;
+		this.clientThread = clientThread;
+		this.metrics = metrics;
+		this.targets = targets;
+	}
+
+	// requestedAt is the System.nanoTime() of the click, for the latency metric. Returns false if the world has
+	// no hop target yet; the hop then starts from onTargetsRebuilt if one turns up in time.
+	public boolean request(int worldNumber, long requestedAt)
+	{
+		awaitedWorld = -1;
+
+		World target = targets.get(worldNumber);
+		if (target == null)
+		{
+			awaitedWorld = worldNumber;
+			awaitedRequestedAt = requestedAt;
+			awaitDeadline = nanoTime() + TARGET_TIMEOUT_NANOS;
+			return false;
+		}
+
+		request(target, requestedAt);
+		return true;
+	}
+
+	public void onTargetsRebuilt()
+	{
+		if (awaitedWorld == -1)
+		{
+			return;
+		}
+
+		if (nanoTime() >= awaitDeadline)
+		{
+			dropAwaited();
+			return;
+		}
+
+		World target = targets.get(awaitedWorld);
+		if (target != null)
+		{
+			awaitedWorld = -1;
+			request(target, awaitedRequestedAt);
+		}
+	}
+
+	private void request(World world, long requestedAt)
+	{
+		if (state == State.HOPPING)
+		{
+			log.debug("Hop to {} in flight, queueing world {}", target.getId(), world.getId());
+			queuedTarget = world;
+			queuedRequestedAt = requestedAt;
+			return;
+		}
+
+		target = world;
+		this.requestedAt = requestedAt;
+
+		if (client.getWidget(ComponentID.WORLD_SWITCHER_WORLD_LIST) != null)
+		{
+			hop();
+		}
+		else if (state != State.OPENING_SWITCHER)
+		{
+			state = State.OPENING_SWITCHER;
+			openAttempts = 0;
+			openSwitcher();
+		}
+	}
+
+	public void onWidgetLoaded(int groupId)
+	{
+		if (state == State.OPENING_SWITCHER && groupId == WORLD_SWITCHER_GROUP)
+		{
+			// The world list is filled in by scripts after the interface loads
+			clientThread.invokeLater(() ->
+			{
+				if (state == State.OPENING_SWITCHER)
+				{
+					hop();
+				}
+			});
+		}
+	}
+
+	public void onGameStateChanged(GameState gameState)
+	{
+		switch (gameState)
+		{
+			case HOPPING:
+				if (state == State.HOPPING)
+				{
+					metrics.hopLatency.record(nanoTime() - requestedAt);
+				}
+				// Whatever the hop was, it supersedes a click still waiting for its target
+				awaitedWorld = -1;
+				target = null;
+				state = State.IDLE;
+				break;
+
+			case LOGGED_IN:
+				if (state == State.IDLE && queuedTarget != null)
+				{
+					World next = queuedTarget;
+					queuedTarget = null;
+					if (next.getId() != client.getWorld())
+					{
+						request(next, queuedRequestedAt);
+					}
+				}
+				break;
+
+			case LOGIN_SCREEN:
+				reset();
+				break;
+		}
+	}
+
+	// Only checks deadlines; nothing is polled while idle
+	public void onGameTick()
+	{
+		if (awaitedWorld != -1 && nanoTime() >= awaitDeadline)
+		{
+			dropAwaited();
+		}
+
+		if (state == State.IDLE || nanoTime() < deadline)
+		{
+			return;
+		}
+
+		if (state == State.OPENING_SWITCHER)
+		{
+			if (client.getWidget(ComponentID.WORLD_SWITCHER_WORLD_LIST) != null)
+			{
+				hop();
+			}
+			else if (openAttempts < MAX_OPEN_ATTEMPTS)
+			{
+				openSwitcher();
+			}
+			else
+			{
+				log.warn("Failed to open world switcher after {} attempts", openAttempts);
+				reset();
+			}
+		}
+		else
+		{
+			log.warn("Hop to world {} didn't start within {} ms", target.getId(), HOP_TIMEOUT_NANOS / 1_000_000);
+			reset();
+		}
+	}
+
+	public void reset()
+	{
+		state = State.IDLE;
+		target = null;
+		queuedTarget = null;
+		awaitedWorld = -1;
+		openAttempts = 0;
+	}
+
+	private void dropAwaited()
+	{
+		log.debug("No hop target for world {} within {} ms, dropping the hop", awaitedWorld,
+			TARGET_TIMEOUT_NANOS / 1_000_000);
+		awaitedWorld = -1;
+	}
+
+	// Overridden by tests to control time
+	long nanoTime()
+	{
+		return System.nanoTime();
+	}
+
+	private void openSwitcher()
+	{
+		openAttempts++;
+		deadline = nanoTime() + OPEN_TIMEOUT_NANOS;
+		client.openWorldHopper();
+	}
+
+	private void hop()
+	{
+		log.debug("Hopping to world {}", target.getId());
+		state = State.HOPPING;
+		deadline = nanoTime() + HOP_TIMEOUT_NANOS;
+		client.hopToWorld(target);
+	}
+}
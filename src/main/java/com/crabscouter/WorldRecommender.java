@@ -0,0 +1,242 @@
+package com.crabscouter;
+
+import java.util.Arrays;
+
+// Ranks worlds by a weighted score in an indexed max-heap, updated only for the worlds each published snapshot
+// changed. Fresh worlds with health left and few players attacking score highest. Health is the estimate
+// extrapolated from the world's damage rate, so worlds with a rate are also re-scored whenever update() is
+// given a later time; the rest only move when reported. Freshness enters the score as lastUpdate rather than
+// age: age grows at the same rate for every world, so ranking by the update time gives the same order at any
+// moment.
+public class WorldRecommender
+{
+	// Attackers beyond this many all count as a full crowd
+	private static final int CROWD_CAP = 20;
+
+	private final int[] heap = new int[WorldStore.CAPACITY];
+	private final int[] positions = new int[WorldStore.CAPACITY];
+	private final double[] scores = new double[WorldStore.CAPACITY];
+	private int size;
+	private long version = -1;
+	// The time extrapolated health was last scored at
+	private long scoredAt = -1;
+
+	private double healthWeight;
+	private double playersWeight;
+	private double freshnessWeight;
+	private WorldFilter filter = WorldFilter.ALL;
+
+	public WorldRecommender()
+	{
+		Arrays.fill(positions, -1);
+	}
+
+	public synchronized void setWeights(int health, int players, int freshness)
+	{
+		healthWeight = health;
+		playersWeight = players;
+		freshnessWeight = freshness;
+		version = -1;
+	}
+
+	// Worlds the panel hides are never recommended; takes effect with a full re-rank on the next update
+	public synchronized void setFilter(WorldFilter filter)
+	{
+		this.filter = filter;
+		version = -1;
+	}
+
+	// Applies what changed since the last snapshot seen, or re-ranks everything if one was missed, then
+	// re-scores worlds whose health moved on by now
+	public synchronized void update(WorldStore.Snapshot snapshot, long now)
+	{
+		long next = snapshot.getVersion();
+		boolean moved = snapshot.isExtrapolating() && now != scoredAt;
+		if (next == version && !moved)
+		{
+			return;
+		}
+
+		if (version == -1 || (next != version && next != version + 1))
+		{
+			while (size > 0)
+			{
+				positions[heap[--size]] = -1;
+			}
+			for (WorldData data : snapshot.worlds())
+			{
+				apply(snapshot, data.getWorld() - WorldStore.MIN_WORLD, now);
+			}
+		}
+		else
+		{
+			if (next == version + 1)
+			{
+				snapshot.forEachChanged(i -> apply(snapshot, i, now));
+			}
+			if (moved)
+			{
+				snapshot.forEachExtrapolating(i -> apply(snapshot, i, now));
+			}
+		}
+		version = next;
+		scoredAt = now;
+	}
+
+	// Highest scoring world other than the given one, or -1
+	public synchronized int best(int excludeWorld)
+	{
+		int[] top = top(2);
+		for (int world : top)
+		{
+			if (world != excludeWorld)
+			{
+				return world;
+			}
+		}
+		return -1;
+	}
+
+	// The k highest scoring worlds, best first. The heap is only walked as far as those k need.
+	public synchronized int[] top(int k)
+	{
+		k = Math.min(k, size);
+		int[] result = new int[k];
+		int[] candidates = new int[2 * k + 1];
+		int candidateCount = 0;
+		if (k > 0)
+		{
+			candidates[candidateCount++] = 0;
+		}
+
+		for (int n = 0; n < k; n++)
+		{
+			int bestIndex = 0;
+			for (int c = 1; c < candidateCount; c++)
+			{
+				if (scores[heap[candidates[c]]] > scores[heap[candidates[bestIndex]]])
+				{
+					bestIndex = c;
+				}
+			}
+
+			int pos = candidates[bestIndex];
+			candidates[bestIndex] = candidates[--candidateCount];
+			result[n] = heap[pos] + WorldStore.MIN_WORLD;
+
+			for (int child = 2 * pos + 1; child <= 2 * pos + 2 && child < size; child++)
+			{
+				candidates[candidateCount++] = child;
+			}
+		}
+		return result;
+	}
+
+	private void apply(WorldStore.Snapshot snapshot, int i, long now)
+	{
+		// Restored worlds are unconfirmed, stale ones are gone as far as hopping is concerned, and filtered ones
+		// aren't on screen
+		if (!snapshot.isPresent(i) || snapshot.isStale(i) || snapshot.isRestored(i)
+			|| !filter.matches(i + WorldStore.MIN_WORLD, snapshot.getChunk(i), snapshot.getHealth(i),
+				snapshot.getTotalPlayers(i)))
+		{
+			remove(i);
+			return;
+		}
+
+		double crowd = Math.min(snapshot.getAttackingPlayers(i), CROWD_CAP) / (double) CROWD_CAP;
+		int health = HealthPredictor.predict(snapshot.getHealth(i), snapshot.getDamageRate(i),
+			now - snapshot.getLastUpdate(i));
+		double score = healthWeight * health / 100.0
+			+ playersWeight * (1 - crowd)
+			+ freshnessWeight * snapshot.getLastUpdate(i) / (double) WorldStore.FRESH_MILLIS;
+
+		int pos = positions[i];
+		if (pos == -1)
+		{
+			pos = size++;
+			heap[pos] = i;
+			positions[i] = pos;
+			scores[i] = score;
+			siftUp(pos);
+		}
+		else
+		{
+			double previous = scores[i];
+			scores[i] = score;
+			if (score > previous)
+			{
+				siftUp(pos);
+			}
+			else
+			{
+				siftDown(pos);
+			}
+		}
+	}
+
+	private void remove(int i)
+	{
+		int pos = positions[i];
+		if (pos == -1)
+		{
+			return;
+		}
+
+		positions[i] = -1;
+		int last = heap[--size];
+		if (pos == size)
+		{
+			return;
+		}
+
+		heap[pos] = last;
+		positions[last] = pos;
+		siftUp(pos);
+		siftDown(positions[last]);
+	}
+
+	private void siftUp(int pos)
+	{
+		int slot = heap[pos];
+		while (pos > 0)
+		{
+			int parent = (pos - 1) / 2;
+			if (scores[heap[parent]] >= scores[slot])
+			{
+				break;
+			}
+			heap[pos] = heap[parent];
+			positions[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = slot;
+		positions[slot] = pos;
+	}
+
+	private void siftDown(int pos)
+	{
+		int slot = heap[pos];
+		while (true)
+		{
+			int child = 2 * pos + 1;
+			if (child >= size)
+			{
+				break;
+			}
+			if (child + 1 < size && scores[heap[child + 1]] > scores[heap[child]])
+			{
+				child++;
+			}
+			if (scores[heap[child]] <= scores[slot])
+			{
+				break;
+			}
+			heap[pos] = heap[child];
+			positions[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = slot;
+		positions[slot] = pos;
+	}
+}
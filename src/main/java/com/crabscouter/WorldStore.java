@@ -0,0 +1,553 @@
+package com.crabscouter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+// World state indexed by world number. OSRS worlds live in a small dense range, so every field is a
+// primitive array indexed by (world - MIN_WORLD). Writers mutate the working arrays under the store lock
+// and call publish() once per message; readers take the latest immutable Snapshot without locking.
+@Slf4j
+public class WorldStore
+{
+	public static final int MIN_WORLD = 300;
+	public static final int CAPACITY = 512;
+	// A world goes stale this long after its last update unless a newer one arrives
+	public static final long FRESH_MILLIS = 90_000;
+
+	public enum Order
+	{
+		WORLD, CHUNK, HEALTH, PLAYERS
+	}
+
+	private final long[] present = new long[CAPACITY / 64];
+	private final long[] seen = new long[CAPACITY / 64];
+	// Worlds loaded from the last session's file that the live feed hasn't confirmed yet
+	private final long[] restored = new long[CAPACITY / 64];
+	private final long[] stale = new long[CAPACITY / 64];
+	// Slots touched since the last publish, so consumers of snapshots can update incrementally
+	private final long[] modified = new long[CAPACITY / 64];
+	private final int[] chunk = new int[CAPACITY];
+	private final byte[] health = new byte[CAPACITY];
+	private final short[] totalPlayers = new short[CAPACITY];
+	private final short[] attackingPlayers = new short[CAPACITY];
+	private final short[] damageRate = new short[CAPACITY];
+	private final long[] lastUpdate = new long[CAPACITY];
+
+	// Kept in step with every change so readers never sort
+	private final SortIndex byChunk = new SortIndex();
+	private final SortIndex byHealth = new SortIndex();
+	private final SortIndex byPlayers = new SortIndex();
+
+	private final ExpiryWheel expiry = new ExpiryWheel();
+
+	private int size;
+	private long version;
+	private boolean dirty;
+
+	private volatile Snapshot snapshot = new Snapshot(this);
+
+	public Snapshot snapshot()
+	{
+		return snapshot;
+	}
+
+	public static boolean inRange(int world)
+	{
+		return world >= MIN_WORLD && world < MIN_WORLD + CAPACITY;
+	}
+
+	public synchronized boolean upsert(int world, int chunk, int health, int totalPlayers, int attackingPlayers,
+		int damageRate, long lastUpdate)
+	{
+		if (!inRange(world))
+		{
+			log.warn("Ignoring world {} outside of the store range", world);
+			return false;
+		}
+
+		int i = world - MIN_WORLD;
+		seen[i >>> 6] |= 1L << i;
+
+		byte h = (byte) Math.max(0, Math.min(100, health));
+		short total = clampShort(totalPlayers);
+		short attacking = clampShort(attackingPlayers);
+		short rate = (short) Math.max(0, Math.min(HealthPredictor.MAX_DAMAGE_RATE, damageRate));
+
+		boolean added = !has(present, i);
+		boolean wasRestored = has(restored, i);
+		restored[i >>> 6] &= ~(1L << i);
+		if (!added
+			&& !wasRestored
+			&& this.chunk[i] == chunk
+			&& this.health[i] == h
+			&& this.totalPlayers[i] == total
+			&& this.attackingPlayers[i] == attacking
+			&& this.damageRate[i] == rate
+			&& this.lastUpdate[i] == lastUpdate)
+		{
+			return false;
+		}
+
+		if (added)
+		{
+			present[i >>> 6] |= 1L << i;
+			size++;
+		}
+		else
+		{
+			unindex(i);
+		}
+
+		this.chunk[i] = chunk;
+		this.health[i] = h;
+		this.totalPlayers[i] = total;
+		this.attackingPlayers[i] = attacking;
+		this.damageRate[i] = rate;
+		this.lastUpdate[i] = lastUpdate;
+		modified[i >>> 6] |= 1L << i;
+		index(i);
+		stale[i >>> 6] &= ~(1L << i);
+		expiry.schedule(i, lastUpdate + FRESH_MILLIS);
+		dirty = true;
+		return true;
+	}
+
+	public synchronized boolean upsertAll(WorldBatch batch)
+	{
+		boolean changed = false;
+		for (int i = 0; i < batch.size(); i++)
+		{
+			changed |= upsert(batch.getWorld(i), batch.getChunk(i), batch.getHealth(i),
+				batch.getTotalPlayers(i), batch.getAttackingPlayers(i), batch.getDamageRate(i), batch.getLastUpdate(i));
+		}
+		return changed;
+	}
+
+	// Adds last session's worlds without overwriting anything the live feed already sent. Their damage rate is
+	// dropped, since extrapolating across the time the client was closed is meaningless.
+	public synchronized boolean restore(WorldBatch batch)
+	{
+		boolean changed = false;
+		for (int b = 0; b < batch.size(); b++)
+		{
+			int world = batch.getWorld(b);
+			if (!inRange(world) || has(present, world - MIN_WORLD))
+			{
+				continue;
+			}
+
+			changed |= upsert(world, batch.getChunk(b), batch.getHealth(b), batch.getTotalPlayers(b),
+				batch.getAttackingPlayers(b), 0, batch.getLastUpdate(b));
+			int i = world - MIN_WORLD;
+			restored[i >>> 6] |= 1L << i;
+			modified[i >>> 6] |= 1L << i;
+			// Restored worlds are shown as last known until the live feed replaces them, not expired
+			expiry.cancel(i);
+		}
+		return changed;
+	}
+
+	public synchronized boolean remove(int world)
+	{
+		if (!inRange(world))
+		{
+			return false;
+		}
+
+		int i = world - MIN_WORLD;
+		if (!has(present, i))
+		{
+			return false;
+		}
+
+		present[i >>> 6] &= ~(1L << i);
+		restored[i >>> 6] &= ~(1L << i);
+		stale[i >>> 6] &= ~(1L << i);
+		modified[i >>> 6] |= 1L << i;
+		expiry.cancel(i);
+		unindex(i);
+		size--;
+		dirty = true;
+		return true;
+	}
+
+	// Replaces the whole world set: everything not upserted between beginSnapshot() and endSnapshot() is removed
+	public synchronized void beginSnapshot()
+	{
+		for (int w = 0; w < seen.length; w++)
+		{
+			seen[w] = 0;
+		}
+	}
+
+	public synchronized boolean endSnapshot()
+	{
+		boolean changed = false;
+		for (int w = 0; w < present.length; w++)
+		{
+			long removed = present[w] & ~seen[w];
+			if (removed != 0)
+			{
+				present[w] &= ~removed;
+				restored[w] &= ~removed;
+				stale[w] &= ~removed;
+				modified[w] |= removed;
+				size -= Long.bitCount(removed);
+				for (long bits = removed; bits != 0; bits &= bits - 1)
+				{
+					int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+					expiry.cancel(i);
+					unindex(i);
+				}
+				changed = true;
+			}
+		}
+		dirty |= changed;
+		return changed;
+	}
+
+	public synchronized boolean clear()
+	{
+		beginSnapshot();
+		return endSnapshot();
+	}
+
+	// Marks every world whose freshness ran out by now as stale; returns whether any did
+	public synchronized boolean expire(long now)
+	{
+		int expired = expiry.advance(now, i ->
+		{
+			stale[i >>> 6] |= 1L << i;
+			modified[i >>> 6] |= 1L << i;
+		});
+		dirty |= expired > 0;
+		return expired > 0;
+	}
+
+	// Makes all changes since the last publish visible to readers as one atomic snapshot
+	public synchronized void publish()
+	{
+		if (!dirty)
+		{
+			return;
+		}
+
+		version++;
+		dirty = false;
+		snapshot = new Snapshot(this);
+		for (int w = 0; w < modified.length; w++)
+		{
+			modified[w] = 0;
+		}
+	}
+
+	private void index(int i)
+	{
+		byChunk.insert(WorldData.chunkOrder(chunk[i]), i);
+		byHealth.insert(health[i], i);
+		byPlayers.insert(totalPlayers[i], i);
+	}
+
+	private void unindex(int i)
+	{
+		byChunk.remove(WorldData.chunkOrder(chunk[i]), i);
+		byHealth.remove(health[i], i);
+		byPlayers.remove(totalPlayers[i], i);
+	}
+
+	private static boolean has(long[] bits, int i)
+	{
+		return (bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	private static short clampShort(int value)
+	{
+		return (short) Math.max(0, Math.min(Short.MAX_VALUE, value));
+	}
+
+	public static final class Snapshot
+	{
+		private final long version;
+		private final int size;
+		private final long[] present;
+		private final long[] restored;
+		private final long[] stale;
+		private final long[] modified;
+		private final int[] chunk;
+		private final byte[] health;
+		private final short[] totalPlayers;
+		private final short[] attackingPlayers;
+		private final short[] damageRate;
+		private final long[] lastUpdate;
+		private final long[] byChunk;
+		private final long[] byHealth;
+		private final long[] byPlayers;
+		private final boolean extrapolating;
+
+		private Snapshot(WorldStore store)
+		{
+			version = store.version;
+			size = store.size;
+			present = store.present.clone();
+			restored = store.restored.clone();
+			stale = store.stale.clone();
+			modified = store.modified.clone();
+			chunk = store.chunk.clone();
+			health = store.health.clone();
+			totalPlayers = store.totalPlayers.clone();
+			attackingPlayers = store.attackingPlayers.clone();
+			damageRate = store.damageRate.clone();
+			lastUpdate = store.lastUpdate.clone();
+			byChunk = store.byChunk.toArray();
+			byHealth = store.byHealth.toArray();
+			byPlayers = store.byPlayers.toArray();
+			extrapolating = anyDamageRate();
+		}
+
+		// Whether any world's displayed health moves on its own between reports
+		public boolean isExtrapolating()
+		{
+			return extrapolating;
+		}
+
+		private boolean anyDamageRate()
+		{
+			for (int w = 0; w < present.length; w++)
+			{
+				long bits = present[w];
+				while (bits != 0)
+				{
+					int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+					if (damageRate[i] > 0)
+					{
+						return true;
+					}
+					bits &= bits - 1;
+				}
+			}
+			return false;
+		}
+
+		// Calls action with the slot of every world whose health is extrapolated from a damage rate
+		void forEachExtrapolating(IntConsumer action)
+		{
+			if (!extrapolating)
+			{
+				return;
+			}
+
+			for (int w = 0; w < present.length; w++)
+			{
+				for (long bits = present[w]; bits != 0; bits &= bits - 1)
+				{
+					int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+					if (damageRate[i] > 0)
+					{
+						action.accept(i);
+					}
+				}
+			}
+		}
+
+		public long getVersion()
+		{
+			return version;
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		public boolean contains(int world)
+		{
+			return inRange(world) && has(present, world - MIN_WORLD);
+		}
+
+		public WorldData get(int world)
+		{
+			return contains(world) ? new WorldData(this, world - MIN_WORLD) : null;
+		}
+
+		// Present worlds in ascending world order
+		public List<WorldData> worlds()
+		{
+			if (size == 0)
+			{
+				return Collections.emptyList();
+			}
+
+			List<WorldData> result = new ArrayList<>(size);
+			for (int w = 0; w < present.length; w++)
+			{
+				long bits = present[w];
+				while (bits != 0)
+				{
+					int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+					result.add(new WorldData(this, i));
+					bits &= bits - 1;
+				}
+			}
+			return result;
+		}
+
+		boolean isRestored(int i)
+		{
+			return has(restored, i);
+		}
+
+		boolean isStale(int i)
+		{
+			return has(stale, i);
+		}
+
+		boolean isPresent(int i)
+		{
+			return has(present, i);
+		}
+
+		// Calls action with the slot of every world added, changed, expired or removed since the previous snapshot
+		void forEachChanged(IntConsumer action)
+		{
+			for (int w = 0; w < modified.length; w++)
+			{
+				for (long bits = modified[w]; bits != 0; bits &= bits - 1)
+				{
+					action.accept((w << 6) + Long.numberOfTrailingZeros(bits));
+				}
+			}
+		}
+
+		// Worlds that haven't gone stale, ordered by one column with ties in ascending world order either way.
+		// Restored worlds never expire, so they are included until the live feed replaces them.
+		public List<WorldData> freshWorlds(Order order, boolean ascending)
+		{
+			List<WorldData> result = new ArrayList<>(size);
+			if (order == Order.WORLD)
+			{
+				for (int w = 0; w < present.length; w++)
+				{
+					for (long bits = present[w] & ~stale[w]; bits != 0; bits &= bits - 1)
+					{
+						result.add(new WorldData(this, (w << 6) + Long.numberOfTrailingZeros(bits)));
+					}
+				}
+				if (!ascending)
+				{
+					Collections.reverse(result);
+				}
+				return result;
+			}
+
+			long[] index = order == Order.CHUNK ? byChunk : order == Order.HEALTH ? byHealth : byPlayers;
+			if (ascending)
+			{
+				for (long entry : index)
+				{
+					addFresh(result, SortIndex.slot(entry));
+				}
+				return result;
+			}
+
+			// Walk key groups backwards but each group forwards, so ties stay in world order
+			int end = index.length - 1;
+			while (end >= 0)
+			{
+				int start = end;
+				while (start > 0 && SortIndex.key(index[start - 1]) == SortIndex.key(index[end]))
+				{
+					start--;
+				}
+				for (int i = start; i <= end; i++)
+				{
+					addFresh(result, SortIndex.slot(index[i]));
+				}
+				end = start - 1;
+			}
+			return result;
+		}
+
+		// As above, but HEALTH order is by health extrapolated to now rather than as last reported
+		public List<WorldData> freshWorlds(Order order, boolean ascending, long now)
+		{
+			List<WorldData> result = freshWorlds(order, ascending);
+			if (order == Order.HEALTH && extrapolating)
+			{
+				sortByEstimatedHealth(result, ascending, now);
+			}
+			return result;
+		}
+
+		// The health index is by reported health; extrapolation only moves a few worlds, so an insertion pass
+		// over the nearly sorted list is close to linear. It is stable, so ties keep their world order.
+		private static void sortByEstimatedHealth(List<WorldData> sorted, boolean ascending, long now)
+		{
+			int[] keys = new int[sorted.size()];
+			for (int i = 0; i < keys.length; i++)
+			{
+				keys[i] = sorted.get(i).getEstimatedHealth(now);
+			}
+
+			for (int i = 1; i < keys.length; i++)
+			{
+				int key = keys[i];
+				WorldData data = sorted.get(i);
+				int j = i - 1;
+				while (j >= 0 && (ascending ? keys[j] > key : keys[j] < key))
+				{
+					keys[j + 1] = keys[j];
+					sorted.set(j + 1, sorted.get(j));
+					j--;
+				}
+				keys[j + 1] = key;
+				sorted.set(j + 1, data);
+			}
+		}
+
+		private void addFresh(List<WorldData> result, int i)
+		{
+			if (!has(stale, i))
+			{
+				result.add(new WorldData(this, i));
+			}
+		}
+
+		int getChunk(int i)
+		{
+			return chunk[i];
+		}
+
+		int getHealth(int i)
+		{
+			return health[i];
+		}
+
+		int getTotalPlayers(int i)
+		{
+			return totalPlayers[i];
+		}
+
+		int getAttackingPlayers(int i)
+		{
+			return attackingPlayers[i];
+		}
+
+		int getDamageRate(int i)
+		{
+			return damageRate[i];
+		}
+
+		long getLastUpdate(int i)
+		{
+			return lastUpdate[i];
+		}
+	}
+}
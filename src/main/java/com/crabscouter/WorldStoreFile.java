@@ -0,0 +1,127 @@
+package com.crabscouter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+// Last known world set persisted between sessions so the panel has something to show before the server answers.
+// The file is a 16 byte header followed by fixed size records that are read in place by offset, so it can be
+// mapped as is. It is at most ~10 KB, so it is read with one read() into a buffer instead: a live mapping keeps
+// the file locked on Windows until the buffer is collected, which would break replacing it on the next save.
+// header: magic, format version, record count, reserved
+// record: world u16, chunk u16, health u8, pad u8, total u16, attacking u16, damage rate u16, last update i64
+@Slf4j
+public class WorldStoreFile
+{
+	private static final int MAGIC = 0x43524142; // "CRAB"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 20;
+
+	private final File file;
+
+	public WorldStoreFile(File file)
+	{
+		this.file = file;
+	}
+
+	// Writes to a temporary file first so a crash mid-write never leaves a torn snapshot behind
+	public synchronized void write(WorldStore.Snapshot snapshot) throws IOException
+	{
+		List<WorldData> worlds = snapshot.worlds();
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + worlds.size() * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC);
+		buf.putInt(FORMAT_VERSION);
+		buf.putInt(worlds.size());
+		buf.putInt(0);
+
+		for (WorldData data : worlds)
+		{
+			buf.putShort((short) data.getWorld());
+			buf.putShort((short) data.getChunk());
+			buf.put((byte) data.getHealth());
+			buf.put((byte) 0);
+			buf.putShort((short) data.getTotalPlayers());
+			buf.putShort((short) data.getAttackingPlayers());
+			buf.putShort((short) data.getDamageRate());
+			buf.putLong(data.getLastUpdate());
+		}
+		buf.flip();
+
+		file.getParentFile().mkdirs();
+		Path tmp = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buf.hasRemaining())
+			{
+				channel.write(buf);
+			}
+		}
+		Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Fills the batch from the file; a missing, foreign or truncated file reads as empty
+	public boolean read(WorldBatch batch) throws IOException
+	{
+		batch.clear();
+		if (!file.isFile())
+		{
+			return false;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			long length = channel.size();
+			if (length < HEADER_SIZE)
+			{
+				return false;
+			}
+
+			if (length > HEADER_SIZE + (long) WorldStore.CAPACITY * RECORD_SIZE)
+			{
+				log.debug("Ignoring oversized world snapshot {}", file);
+				return false;
+			}
+
+			ByteBuffer buf = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+			while (buf.hasRemaining())
+			{
+				if (channel.read(buf) == -1)
+				{
+					return false;
+				}
+			}
+
+			int count = buf.getInt(8);
+			if (buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT_VERSION
+				|| count < 0 || count > WorldStore.CAPACITY || length < HEADER_SIZE + (long) count * RECORD_SIZE)
+			{
+				log.debug("Ignoring unreadable world snapshot {}", file);
+				return false;
+			}
+
+			for (int i = 0, offset = HEADER_SIZE; i < count; i++, offset += RECORD_SIZE)
+			{
+				batch.add(
+					buf.getShort(offset) & 0xFFFF,
+					buf.getShort(offset + 2) & 0xFFFF,
+					buf.get(offset + 4) & 0xFF,
+					buf.getShort(offset + 6) & 0xFFFF,
+					buf.getShort(offset + 8) & 0xFFFF,
+					buf.getShort(offset + 10) & 0xFFFF,
+					buf.getLong(offset + 12)
+				);
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.crabscouter;
+
+import net.runelite.api.NPC;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CrabIndexTest
+{
+	private static final int CRAB_ID = 14779;
+	// Regions 4913 and 4911
+	private static final WorldPoint NORTH = new WorldPoint(1230, 3150, 0);
+	private static final WorldPoint WEST = new WorldPoint(1230, 3020, 0);
+
+	private final CrabIndex index = new CrabIndex(TargetRegistry.getDefault());
+
+	@Test
+	public void findsCrabByRegion()
+	{
+		NPC north = npc(CRAB_ID, null, NORTH);
+		NPC west = npc(CRAB_ID, null, WEST);
+		assertTrue(index.add(north));
+		assertTrue(index.add(west));
+
+		assertSame(north, index.find(NORTH.getRegionID()));
+		assertSame(west, index.find(WEST.getRegionID()));
+		assertEquals(WEST.getRegionID(), index.getRegion(west));
+		assertNull(index.find(5424));
+	}
+
+	@Test
+	public void matchesOtherIdsByName()
+	{
+		assertTrue(index.add(npc(14780, "Gemstone Crab", NORTH)));
+		assertFalse(index.add(npc(14781, "Gemstone crab shell", NORTH)));
+		assertFalse(index.add(npc(1, "Goblin", NORTH)));
+		assertFalse(index.add(npc(2, null, NORTH)));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void removeAndClearForgetCrabs()
+	{
+		NPC north = npc(CRAB_ID, null, NORTH);
+		NPC west = npc(CRAB_ID, null, WEST);
+		index.add(north);
+		index.add(west);
+
+		index.remove(north);
+		assertNull(index.find(NORTH.getRegionID()));
+		assertEquals(-1, index.getRegion(north));
+
+		index.clear();
+		assertEquals(0, index.size());
+	}
+
+	private static NPC npc(int id, String name, WorldPoint location)
+	{
+		Fakes.ActorState state = new Fakes.ActorState();
+		state.id = id;
+		state.name = name;
+		state.location = location;
+		return Fakes.npc(state);
+	}
+}
@@ -0,0 +1,235 @@
+package com.crabscouter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import okio.ByteString;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CrabScouterBinaryProtocolTest
+{
+	@Test
+	public void varintRoundTrip()
+	{
+		long[] values = {0, 1, 127, 128, 300, 16_383, 16_384, Integer.MAX_VALUE, 1_700_000_000_000L,
+			Long.MAX_VALUE, -1};
+		for (long value : values)
+		{
+			ByteBuffer buf = ByteBuffer.allocate(16);
+			CrabScouterBinaryProtocol.putVarint(buf, value);
+			buf.flip();
+			assertEquals(value, CrabScouterBinaryProtocol.getVarint(buf));
+			assertFalse(buf.hasRemaining());
+		}
+	}
+
+	@Test
+	public void varintLength()
+	{
+		assertEquals(1, varintLength(0));
+		assertEquals(1, varintLength(127));
+		assertEquals(2, varintLength(128));
+		assertEquals(2, varintLength(16_383));
+		assertEquals(3, varintLength(16_384));
+		assertEquals(10, varintLength(-1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void varintTooLong()
+	{
+		ByteBuffer buf = ByteBuffer.allocate(11);
+		for (int i = 0; i < 10; i++)
+		{
+			buf.put((byte) 0x80);
+		}
+		buf.put((byte) 0x01);
+		buf.flip();
+		CrabScouterBinaryProtocol.getVarint(buf);
+	}
+
+	@Test
+	public void encodeJoin()
+	{
+		assertBytes(CrabScouterBinaryProtocol.encodeJoin(420, 4913),
+			0x01, 0x01, 0xA4, 0x13, 0x31);
+	}
+
+	@Test
+	public void encodeLeaveAndResign()
+	{
+		assertBytes(CrabScouterBinaryProtocol.encodeLeave(420), 0x02, 0x01, 0xA4);
+		assertBytes(CrabScouterBinaryProtocol.encodeResign(420), 0x04, 0x01, 0xA4);
+	}
+
+	@Test
+	public void encodeReportClampsValues()
+	{
+		assertBytes(CrabScouterBinaryProtocol.encodeReport(420, 4913, 300, 200, -5, 300),
+			0x03, 0x01, 0xA4, 0x13, 0x31, 0xFF, 0xC8, 0x01, 0x00, 0xAC, 0x02);
+		assertBytes(CrabScouterBinaryProtocol.encodeReport(420, 4913, 50, 1, 1, -1),
+			0x03, 0x01, 0xA4, 0x13, 0x31, 0x32, 0x01, 0x01, 0x00);
+	}
+
+	@Test
+	public void encodeResync()
+	{
+		assertBytes(CrabScouterBinaryProtocol.encodeResync(300), 0x05, 0xAC, 0x02);
+		assertBytes(CrabScouterBinaryProtocol.encodeResync(-1), 0x05, 0x00);
+	}
+
+	@Test
+	public void encodeSubscribe()
+	{
+		WorldFilter filter = new WorldFilter(new int[]{5424, 4913}, new int[]{420}, 300, 50);
+		assertBytes(CrabScouterBinaryProtocol.encodeSubscribe(filter),
+			0x06, 0x02, 0x13, 0x31, 0x15, 0x30, 0x01, 0x01, 0xA4, 0xAC, 0x02, 0x32);
+		assertBytes(CrabScouterBinaryProtocol.encodeSubscribe(WorldFilter.ALL), 0x06, 0x00, 0x00, 0x00, 0x00);
+	}
+
+	@Test
+	public void decodeSnapshot() throws Exception
+	{
+		long now = 1_700_000_000_000L;
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		buf.put((byte) CrabScouterBinaryProtocol.OP_SNAPSHOT);
+		CrabScouterBinaryProtocol.putVarint(buf, 7);
+		CrabScouterBinaryProtocol.putVarint(buf, now);
+		CrabScouterBinaryProtocol.putVarint(buf, 2);
+		putWorld(buf, 420, 4913, 80, 12, 5, 75, 1_500);
+		putWorld(buf, 301, 5424, 100, 0, 0, 0, 0);
+		buf.flip();
+
+		CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+		decoder.decode(buf);
+
+		assertEquals("snapshot", decoder.getType());
+		assertEquals(7, decoder.getSeq());
+		WorldBatch worlds = decoder.getWorlds();
+		assertEquals(2, worlds.size());
+		assertWorld(worlds, 0, 420, 4913, 80, 12, 5, 75, now - 1_500);
+		assertWorld(worlds, 1, 301, 5424, 100, 0, 0, 0, now);
+		assertEquals(0, decoder.getRemoves().length);
+	}
+
+	@Test
+	public void decodePatch() throws Exception
+	{
+		long now = 1_700_000_000_000L;
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		buf.put((byte) CrabScouterBinaryProtocol.OP_PATCH);
+		CrabScouterBinaryProtocol.putVarint(buf, 8);
+		CrabScouterBinaryProtocol.putVarint(buf, now);
+		CrabScouterBinaryProtocol.putVarint(buf, 1);
+		putWorld(buf, 420, 4913, 79, 13, 6, 0, 250);
+		CrabScouterBinaryProtocol.putVarint(buf, 2);
+		CrabScouterBinaryProtocol.putShort(buf, 301);
+		CrabScouterBinaryProtocol.putShort(buf, 302);
+		buf.flip();
+
+		CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+		decoder.decode(buf);
+
+		assertEquals("patch", decoder.getType());
+		assertEquals(8, decoder.getSeq());
+		assertEquals(1, decoder.getWorlds().size());
+		assertWorld(decoder.getWorlds(), 0, 420, 4913, 79, 13, 6, 0, now - 250);
+		assertArrayEquals(new int[]{301, 302}, decoder.getRemoves());
+	}
+
+	@Test
+	public void decodeRole() throws Exception
+	{
+		CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+		decoder.decode(ByteBuffer.wrap(new byte[]{(byte) CrabScouterBinaryProtocol.OP_ROLE, 1}));
+		assertEquals("role", decoder.getType());
+		assertTrue(decoder.isReporter());
+	}
+
+	@Test
+	public void decodeDeflatedPatch() throws Exception
+	{
+		String json = "{\"type\":\"patch\",\"seq\":9,\"upserts\":[{\"world\":420,\"chunk\":4911,\"health\":40,"
+			+ "\"totalPlayers\":3,\"attackingPlayers\":2,\"damageRate\":75,\"lastUpdate\":1700000000000}],"
+			+ "\"removes\":[303]}";
+		byte[] frame = CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_TEXT,
+			json.getBytes(StandardCharsets.UTF_8));
+
+		CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+		decoder.decode(ByteBuffer.wrap(frame));
+
+		assertEquals("patch", decoder.getType());
+		assertEquals(9, decoder.getSeq());
+		assertWorld(decoder.getWorlds(), 0, 420, 4911, 40, 3, 2, 75, 1_700_000_000_000L);
+		assertArrayEquals(new int[]{303}, decoder.getRemoves());
+		assertEquals(json.length(), decoder.getInflatedSize());
+	}
+
+	@Test
+	public void decodeDeflatedBinaryFrame() throws Exception
+	{
+		byte[] role = {(byte) CrabScouterBinaryProtocol.OP_ROLE, 1};
+		byte[] frame = CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY, role);
+
+		CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+		decoder.decode(ByteBuffer.wrap(frame));
+
+		assertEquals("role", decoder.getType());
+		assertTrue(decoder.isReporter());
+		assertEquals(2, decoder.getInflatedSize());
+	}
+
+	@Test(expected = IOException.class)
+	public void nestedDeflatedFrameIsRejected() throws Exception
+	{
+		byte[] inner = CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY,
+			new byte[]{(byte) CrabScouterBinaryProtocol.OP_ROLE, 1});
+		byte[] frame = CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY, inner);
+
+		new CrabScouterMessageDecoder().decode(ByteBuffer.wrap(frame));
+	}
+
+	private static void putWorld(ByteBuffer buf, int world, int chunk, int health, int total, int attacking,
+		int damageRate, long age)
+	{
+		CrabScouterBinaryProtocol.putShort(buf, world);
+		CrabScouterBinaryProtocol.putShort(buf, chunk);
+		buf.put((byte) health);
+		CrabScouterBinaryProtocol.putVarint(buf, total);
+		CrabScouterBinaryProtocol.putVarint(buf, attacking);
+		CrabScouterBinaryProtocol.putVarint(buf, damageRate);
+		CrabScouterBinaryProtocol.putVarint(buf, age);
+	}
+
+	private static void assertWorld(WorldBatch batch, int i, int world, int chunk, int health, int total,
+		int attacking, int damageRate, long lastUpdate)
+	{
+		assertEquals(world, batch.getWorld(i));
+		assertEquals(chunk, batch.getChunk(i));
+		assertEquals(health, batch.getHealth(i));
+		assertEquals(total, batch.getTotalPlayers(i));
+		assertEquals(attacking, batch.getAttackingPlayers(i));
+		assertEquals(damageRate, batch.getDamageRate(i));
+		assertEquals(lastUpdate, batch.getLastUpdate(i));
+	}
+
+	private static void assertBytes(ByteString actual, int... expected)
+	{
+		byte[] bytes = new byte[expected.length];
+		for (int i = 0; i < expected.length; i++)
+		{
+			bytes[i] = (byte) expected[i];
+		}
+		assertEquals(ByteString.of(bytes), actual);
+	}
+
+	private static int varintLength(long value)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(16);
+		CrabScouterBinaryProtocol.putVarint(buf, value);
+		return buf.position();
+	}
+}
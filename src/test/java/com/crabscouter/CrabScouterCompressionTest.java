@@ -0,0 +1,68 @@
+package com.crabscouter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import okio.ByteString;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CrabScouterCompressionTest
+{
+	private final CrabScouterCompression compression = new CrabScouterCompression();
+
+	@Test
+	public void roundTrip() throws Exception
+	{
+		byte[] payload = ("{\"type\":\"patch\",\"seq\":41,\"upserts\":[{\"world\":420,\"chunk\":4913,\"health\":62,"
+			+ "\"totalPlayers\":9,\"attackingPlayers\":4,\"damageRate\":120,\"lastUpdate\":1700000000000}],"
+			+ "\"removes\":[]}").getBytes(StandardCharsets.UTF_8);
+		byte[] frame = CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_TEXT, payload);
+
+		assertEquals(CrabScouterBinaryProtocol.OP_DEFLATED_TEXT, frame[0]);
+		// The dictionary should carry most of a one-world patch
+		assertTrue(frame.length < payload.length / 2);
+
+		assertEquals(ByteString.of(payload), inflate(frame));
+	}
+
+	@Test
+	public void outputGrowsForLargeFrames() throws Exception
+	{
+		byte[] payload = new byte[100_000];
+		for (int i = 0; i < payload.length; i++)
+		{
+			payload[i] = (byte) (i * 31 + i / 7);
+		}
+
+		assertEquals(ByteString.of(payload), inflate(CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY,
+			payload)));
+		// The grown buffer is reused for the next, smaller frame
+		byte[] small = {1, 2, 3};
+		assertEquals(ByteString.of(small), inflate(CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY,
+			small)));
+	}
+
+	@Test(expected = DataFormatException.class)
+	public void truncatedFrameIsRejected() throws Exception
+	{
+		byte[] frame = CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_TEXT,
+			"{\"type\":\"role\",\"isReporter\":true}".getBytes(StandardCharsets.UTF_8));
+
+		inflate(Arrays.copyOf(frame, frame.length - 4));
+	}
+
+	@Test(expected = DataFormatException.class)
+	public void oversizedFrameIsRejected() throws Exception
+	{
+		inflate(CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY, new byte[5 * 1024 * 1024]));
+	}
+
+	private ByteString inflate(byte[] frame) throws DataFormatException
+	{
+		ByteBuffer output = compression.inflate(ByteBuffer.wrap(frame, 1, frame.length - 1));
+		return ByteString.of(output.array(), output.position(), output.remaining());
+	}
+}
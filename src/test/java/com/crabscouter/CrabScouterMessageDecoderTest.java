@@ -0,0 +1,127 @@
+package com.crabscouter;
+
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CrabScouterMessageDecoderTest
+{
+	private final CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+
+	@Test
+	public void decodesSnapshot() throws Exception
+	{
+		decoder.decode("{\"type\":\"snapshot\",\"seq\":12,\"worlds\":["
+			+ "{\"world\":420,\"chunk\":4913,\"health\":80,\"totalPlayers\":12,\"attackingPlayers\":5,"
+			+ "\"damageRate\":75,\"lastUpdate\":1700000000000},"
+			+ "{\"world\":301,\"chunk\":5424,\"health\":100,\"totalPlayers\":0,\"attackingPlayers\":0,"
+			+ "\"lastUpdate\":1700000001000}]}");
+
+		assertEquals("snapshot", decoder.getType());
+		assertEquals(12, decoder.getSeq());
+		WorldBatch worlds = decoder.getWorlds();
+		assertEquals(2, worlds.size());
+		assertWorld(worlds, 0, 420, 4913, 80, 12, 5, 75, 1_700_000_000_000L);
+		assertWorld(worlds, 1, 301, 5424, 100, 0, 0, 0, 1_700_000_001_000L);
+		assertEquals(0, decoder.getRemoves().length);
+	}
+
+	@Test
+	public void decodesPatchInAnyFieldOrder() throws Exception
+	{
+		decoder.decode("{\"removes\":[301,302],\"upserts\":[{\"lastUpdate\":5,\"attackingPlayers\":1,"
+			+ "\"totalPlayers\":2,\"health\":3,\"chunk\":4911,\"world\":330}],\"seq\":4,\"type\":\"patch\"}");
+
+		assertEquals("patch", decoder.getType());
+		assertEquals(4, decoder.getSeq());
+		assertEquals(1, decoder.getWorlds().size());
+		assertWorld(decoder.getWorlds(), 0, 330, 4911, 3, 2, 1, 0, 5);
+		assertArrayEquals(new int[]{301, 302}, decoder.getRemoves());
+	}
+
+	@Test
+	public void skipsUnknownAndNullFields() throws Exception
+	{
+		decoder.decode("{\"type\":\"patch\",\"seq\":1,\"extra\":{\"nested\":[1,2,{\"a\":null}]},\"upserts\":["
+			+ "{\"world\":330,\"chunk\":null,\"health\":null,\"future\":\"x\",\"lastUpdate\":9}]}");
+
+		assertWorld(decoder.getWorlds(), 0, 330, -1, 100, 0, 0, 0, 9);
+	}
+
+	@Test
+	public void skipsWorldsWithoutNumber() throws Exception
+	{
+		decoder.decode("{\"type\":\"snapshot\",\"seq\":1,\"worlds\":[{\"chunk\":4913},{\"world\":301}]}");
+
+		assertEquals(1, decoder.getWorlds().size());
+		assertEquals(301, decoder.getWorlds().getWorld(0));
+	}
+
+	@Test
+	public void decodesRole() throws Exception
+	{
+		decoder.decode("{\"type\":\"role\",\"isReporter\":true}");
+		assertEquals("role", decoder.getType());
+		assertTrue(decoder.isReporter());
+	}
+
+	@Test
+	public void decodesWelcome() throws Exception
+	{
+		decoder.decode("{\"type\":\"welcome\",\"protocol\":1,\"capabilities\":[\"binary-v2\",\"damage-rate-v1\",\"later-v9\"]}");
+		assertEquals("welcome", decoder.getType());
+		assertEquals(3, decoder.getCapabilities().size());
+		assertTrue(decoder.getCapabilities().contains(CrabScouterBinaryProtocol.CAPABILITY));
+		assertTrue(decoder.getCapabilities().contains(HealthPredictor.CAPABILITY));
+	}
+
+	@Test
+	public void resetsBetweenMessages() throws Exception
+	{
+		decoder.decode("{\"type\":\"patch\",\"seq\":3,\"upserts\":[{\"world\":301}],\"removes\":[302]}");
+		decoder.decode("{\"isReporter\":false}");
+
+		assertNull(decoder.getType());
+		assertEquals(-1, decoder.getSeq());
+		assertFalse(decoder.isReporter());
+		assertEquals(0, decoder.getWorlds().size());
+		assertEquals(0, decoder.getRemoves().length);
+	}
+
+	@Test
+	public void growsRemoves() throws Exception
+	{
+		StringBuilder json = new StringBuilder("{\"type\":\"patch\",\"seq\":1,\"removes\":[");
+		int[] expected = new int[40];
+		for (int i = 0; i < expected.length; i++)
+		{
+			expected[i] = 301 + i;
+			json.append(i == 0 ? "" : ",").append(expected[i]);
+		}
+		decoder.decode(json.append("]}").toString());
+
+		assertArrayEquals(expected, decoder.getRemoves());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedMessage() throws Exception
+	{
+		decoder.decode("{\"type\":\"patch\",\"seq\":1,\"upserts\":[{\"world\":301");
+	}
+
+	private static void assertWorld(WorldBatch batch, int i, int world, int chunk, int health, int total,
+		int attacking, int damageRate, long lastUpdate)
+	{
+		assertEquals(world, batch.getWorld(i));
+		assertEquals(chunk, batch.getChunk(i));
+		assertEquals(health, batch.getHealth(i));
+		assertEquals(total, batch.getTotalPlayers(i));
+		assertEquals(attacking, batch.getAttackingPlayers(i));
+		assertEquals(damageRate, batch.getDamageRate(i));
+		assertEquals(lastUpdate, batch.getLastUpdate(i));
+	}
+}
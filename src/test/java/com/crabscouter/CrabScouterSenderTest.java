@@ -0,0 +1,158 @@
+package com.crabscouter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CrabScouterSenderTest
+{
+	private final List<String> written = new CopyOnWriteArrayList<>();
+	private final List<Thread> writers = new CopyOnWriteArrayList<>();
+	private volatile CountDownLatch gate = new CountDownLatch(0);
+	private volatile WorldFilter subscribed;
+
+	private final CrabScouterSender sender = new CrabScouterSender(message ->
+	{
+		try
+		{
+			gate.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		writers.add(Thread.currentThread());
+		if (message.type == CrabScouterSender.Type.SUBSCRIBE)
+		{
+			subscribed = message.filter;
+		}
+		written.add(message.type + " " + message.world + (message.type == CrabScouterSender.Type.REPORT
+			? " " + message.health : ""));
+	});
+
+	@After
+	public void tearDown()
+	{
+		gate.countDown();
+		sender.stop();
+	}
+
+	@Test
+	public void messagesWaitUntilConnected() throws Exception
+	{
+		sender.start();
+		sender.enqueue(CrabScouterSender.Type.JOIN, 301, 4913, 0);
+		sender.enqueue(CrabScouterSender.Type.LEAVE, 301, 0, 0);
+		Thread.sleep(50);
+		assertTrue(written.isEmpty());
+
+		sender.setConnected(true);
+		awaitWritten(2);
+		assertEquals("JOIN 301", written.get(0));
+		assertEquals("LEAVE 301", written.get(1));
+	}
+
+	@Test
+	public void reportAtTailIsCoalesced() throws Exception
+	{
+		sender.start();
+		sender.enqueueReport(301, 4913, 90, 5, 2, 0);
+		sender.enqueueReport(301, 4913, 85, 5, 2, 0);
+		sender.enqueueReport(302, 4913, 70, 5, 2, 0);
+		sender.enqueueReport(302, 4913, 65, 5, 2, 0);
+
+		sender.setConnected(true);
+		awaitWritten(2);
+		assertEquals("REPORT 301 85", written.get(0));
+		assertEquals("REPORT 302 65", written.get(1));
+	}
+
+	@Test
+	public void reportDoesNotOvertakeLaterMessages() throws Exception
+	{
+		sender.start();
+		sender.enqueueReport(301, 4913, 90, 5, 2, 0);
+		sender.enqueue(CrabScouterSender.Type.LEAVE, 301, 0, 0);
+		sender.enqueue(CrabScouterSender.Type.JOIN, 301, 4913, 0);
+		sender.enqueueReport(301, 4913, 85, 5, 2, 0);
+
+		sender.setConnected(true);
+		awaitWritten(4);
+		assertEquals("REPORT 301 90", written.get(0));
+		assertEquals("LEAVE 301", written.get(1));
+		assertEquals("JOIN 301", written.get(2));
+		assertEquals("REPORT 301 85", written.get(3));
+	}
+
+	@Test
+	public void queuedSubscribeIsReplaced() throws Exception
+	{
+		WorldFilter newer = new WorldFilter(new int[]{5424}, new int[0], 0, 0);
+		sender.start();
+		sender.enqueueSubscribe(new WorldFilter(new int[]{4913}, new int[0], 0, 0));
+		sender.enqueue(CrabScouterSender.Type.JOIN, 301, 4913, 0);
+		sender.enqueueSubscribe(newer);
+
+		sender.setConnected(true);
+		awaitWritten(2);
+		assertEquals("SUBSCRIBE 0", written.get(0));
+		assertEquals("JOIN 301", written.get(1));
+		assertSame(newer, subscribed);
+
+		// Once sent, a new subscribe queues behind
+		sender.enqueueSubscribe(WorldFilter.ALL);
+		awaitWritten(3);
+		assertSame(WorldFilter.ALL, subscribed);
+	}
+
+	@Test
+	public void stopFlushesQueue()
+	{
+		sender.setConnected(true);
+		gate = new CountDownLatch(1);
+		sender.start();
+		sender.enqueue(CrabScouterSender.Type.JOIN, 301, 4913, 0);
+		sender.enqueue(CrabScouterSender.Type.LEAVE, 301, 0, 0);
+
+		gate.countDown();
+		sender.stop();
+		assertEquals(2, written.size());
+	}
+
+	@Test
+	public void restartAfterTimedOutStopKeepsOneThread() throws Exception
+	{
+		sender.setConnected(true);
+		gate = new CountDownLatch(1);
+		sender.start();
+		sender.enqueue(CrabScouterSender.Type.JOIN, 301, 4913, 0);
+
+		// The write is stuck, so stop() gives up waiting and the thread is still running
+		sender.stop();
+		sender.start();
+		sender.enqueue(CrabScouterSender.Type.LEAVE, 301, 0, 0);
+
+		gate.countDown();
+		awaitWritten(2);
+		assertSame(writers.get(0), writers.get(1));
+
+		// It was revived rather than left to exit
+		sender.enqueue(CrabScouterSender.Type.JOIN, 302, 4913, 0);
+		awaitWritten(3);
+	}
+
+	private void awaitWritten(int count) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (written.size() < count)
+		{
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+}
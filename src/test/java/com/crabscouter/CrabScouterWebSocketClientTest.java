@@ -0,0 +1,360 @@
+package com.crabscouter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CrabScouterWebSocketClientTest
+{
+	// Written by the sender thread
+	private final List<String> sent = new CopyOnWriteArrayList<>();
+	private final WebSocket socket = new RecordingWebSocket(sent);
+	private final CrabScouterPlugin plugin = new CrabScouterPlugin();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private long now;
+	private int flushes;
+	private CrabScouterWebSocketClient client;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		OkHttpClient httpClient = new OkHttpClient()
+		{
+			@Override
+			public WebSocket newWebSocket(Request request, WebSocketListener listener)
+			{
+				return socket;
+			}
+		};
+
+		client = new CrabScouterWebSocketClient(plugin, "ws://localhost", httpClient, new Gson(), executor)
+		{
+			@Override
+			long nanoTime()
+			{
+				return now;
+			}
+		};
+		// Joined, so opening replays the join rather than asking for a snapshot
+		client.sendJoin(301, 4913);
+		client.connect();
+		client.onOpen(socket, null);
+		assertEquals(1, count("join"));
+	}
+
+	@After
+	public void tearDown()
+	{
+		client.close();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void reopenReplaysJoin() throws Exception
+	{
+		client.onOpen(socket, null);
+
+		assertEquals(2, count("join"));
+		assertEquals(0, resyncs());
+	}
+
+	@Test
+	public void listenerAsksForSnapshotOnOpen() throws Exception
+	{
+		client.sendLeave(301);
+		client.onOpen(socket, null);
+
+		assertEquals(1, count("join"));
+		assertEquals(1, resyncs());
+	}
+
+	@Test
+	public void connectionsClosedBeforeAnswerCountAsFailures()
+	{
+		for (int i = 0; i < ReconnectPolicy.FAILURE_THRESHOLD; i++)
+		{
+			reopen();
+		}
+
+		assertEquals(ReconnectPolicy.State.OPEN, client.getReconnectState());
+	}
+
+	@Test
+	public void firstMessageResetsBackoff()
+	{
+		for (int i = 0; i < ReconnectPolicy.FAILURE_THRESHOLD; i++)
+		{
+			reopen();
+			client.onMessage(null, snapshot(1, 301, 90));
+		}
+
+		assertEquals(ReconnectPolicy.State.CLOSED, client.getReconnectState());
+	}
+
+	@Test
+	public void callbacksFromReplacedSocketAreIgnored() throws Exception
+	{
+		WebSocket stale = new RecordingWebSocket(new CopyOnWriteArrayList<>());
+		client.onFailure(stale, new IOException("reset"), null);
+		client.onClosed(stale, 1000, "");
+
+		// Still connected, so the snapshot it asks for goes out
+		client.onMessage(null, patch(3, 301, 80));
+		assertEquals(1, resyncs());
+	}
+
+	@Test
+	public void patchesApplyInSequence() throws Exception
+	{
+		client.onMessage(null, snapshot(1, 301, 90));
+		client.onMessage(null, patch(2, 301, 80));
+		client.onMessage(null, patch(3, 302, 70));
+
+		assertEquals(2, plugin.getWorldStore().snapshot().size());
+		assertEquals(0, resyncs());
+	}
+
+	@Test
+	public void duplicatePatchIsIgnored() throws Exception
+	{
+		client.onMessage(null, snapshot(1, 301, 90));
+		client.onMessage(null, patch(2, 301, 80));
+		client.onMessage(null, patch(2, 302, 70));
+
+		assertEquals(1, plugin.getWorldStore().snapshot().size());
+		assertEquals(0, resyncs());
+	}
+
+	@Test
+	public void gapRequestsOneResync() throws Exception
+	{
+		client.onMessage(null, snapshot(1, 301, 90));
+		client.onMessage(null, patch(3, 302, 80));
+		client.onMessage(null, patch(4, 303, 70));
+
+		assertEquals(1, resyncs());
+		assertEquals(1, lastResync().get("seq").getAsLong());
+		assertEquals(1, plugin.getWorldStore().snapshot().size());
+	}
+
+	@Test
+	public void patchBeforeSnapshotRequestsResync() throws Exception
+	{
+		client.onMessage(null, patch(7, 301, 80));
+
+		assertEquals(1, resyncs());
+		assertTrue(plugin.getWorldStore().snapshot().isEmpty());
+	}
+
+	@Test
+	public void unansweredResyncIsSentAgain() throws Exception
+	{
+		client.onMessage(null, snapshot(1, 301, 90));
+		client.onMessage(null, patch(3, 301, 80));
+
+		now += TimeUnit.SECONDS.toNanos(9);
+		client.onMessage(null, patch(4, 301, 70));
+		assertEquals(1, resyncs());
+
+		now += TimeUnit.SECONDS.toNanos(1);
+		client.onMessage(null, patch(5, 301, 60));
+		assertEquals(2, resyncs());
+
+		// The deadline restarts with every request
+		client.onMessage(null, patch(6, 301, 50));
+		assertEquals(2, resyncs());
+	}
+
+	@Test
+	public void snapshotEndsResync() throws Exception
+	{
+		client.onMessage(null, snapshot(1, 301, 90));
+		client.onMessage(null, patch(3, 301, 80));
+		client.onMessage(null, snapshot(5, 302, 70));
+		client.onMessage(null, patch(6, 303, 60));
+
+		assertEquals(1, resyncs());
+		assertEquals(2, plugin.getWorldStore().snapshot().size());
+
+		// A later gap asks again straight away
+		client.onMessage(null, patch(8, 303, 50));
+		assertEquals(2, resyncs());
+	}
+
+	@Test
+	public void damageRatesNeedTheServersConsent() throws Exception
+	{
+		assertTrue(parse(sent.get(0)).getAsJsonArray("capabilities").toString().contains(HealthPredictor.CAPABILITY));
+		assertFalse(client.isDamageRateAccepted());
+
+		client.onMessage(null, "{\"type\":\"welcome\",\"capabilities\":[\"" + HealthPredictor.CAPABILITY + "\"]}");
+		assertTrue(client.isDamageRateAccepted());
+
+		// Every connection negotiates afresh
+		client.onOpen(socket, null);
+		assertFalse(client.isDamageRateAccepted());
+		client.onMessage(null, "{\"type\":\"welcome\",\"capabilities\":[]}");
+		assertFalse(client.isDamageRateAccepted());
+	}
+
+	@Test
+	public void inboundTextIsMeasuredInUtf8Bytes()
+	{
+		String text = "{\"type\":\"role\",\"isReporter\":false,\"note\":\"\u00e9\u20ac\ud83e\udd80\"}";
+		client.onMessage(null, text);
+
+		int expected = text.getBytes(StandardCharsets.UTF_8).length;
+		assertEquals(text.length() + 1 + 2 + 2, expected);
+		assertEquals(expected, plugin.getMetrics().bytesIn.sum());
+	}
+
+	private void reopen()
+	{
+		client.onClosed(socket, 1000, "");
+		client.connect();
+		client.onOpen(socket, null);
+	}
+
+	private int resyncs() throws InterruptedException
+	{
+		return count("resync");
+	}
+
+	// Messages go out on the sender thread in queue order, so once a leave queued behind them has been
+	// written, so has everything before it
+	private int count(String type) throws InterruptedException
+	{
+		int marker = ++flushes;
+		client.sendLeave(marker);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!sentLeave(marker))
+		{
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+
+		int count = 0;
+		for (String message : sent)
+		{
+			if (parse(message).get("type").getAsString().equals(type))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean sentLeave(int world)
+	{
+		for (String message : sent)
+		{
+			JsonObject json = parse(message);
+			if (json.get("type").getAsString().equals("leave") && json.get("world").getAsInt() == world)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private JsonObject lastResync()
+	{
+		JsonObject last = null;
+		for (String message : sent)
+		{
+			JsonObject json = parse(message);
+			if (json.get("type").getAsString().equals("resync"))
+			{
+				last = json;
+			}
+		}
+		return last;
+	}
+
+	private static JsonObject parse(String message)
+	{
+		return new JsonParser().parse(message).getAsJsonObject();
+	}
+
+	private static String snapshot(long seq, int world, int health)
+	{
+		return "{\"type\":\"snapshot\",\"seq\":" + seq + ",\"worlds\":[" + world(world, health) + "]}";
+	}
+
+	private static String patch(long seq, int world, int health)
+	{
+		return "{\"type\":\"patch\",\"seq\":" + seq + ",\"upserts\":[" + world(world, health) + "]}";
+	}
+
+	private static String world(int world, int health)
+	{
+		return "{\"world\":" + world + ",\"chunk\":4913,\"health\":" + health
+			+ ",\"totalPlayers\":5,\"attackingPlayers\":2,\"lastUpdate\":1700000000000}";
+	}
+
+	// Records text frames; the client under test never reads anything else from it
+	static final class RecordingWebSocket implements WebSocket
+	{
+		private final List<String> sent;
+
+		RecordingWebSocket(List<String> sent)
+		{
+			this.sent = sent;
+		}
+
+		@Override
+		public Request request()
+		{
+			return new Request.Builder().url("ws://localhost").build();
+		}
+
+		@Override
+		public long queueSize()
+		{
+			return 0;
+		}
+
+		@Override
+		public synchronized boolean send(String text)
+		{
+			sent.add(text);
+			return true;
+		}
+
+		@Override
+		public boolean send(ByteString bytes)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean close(int code, String reason)
+		{
+			return true;
+		}
+
+		@Override
+		public void cancel()
+		{
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.crabscouter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class ExpiryWheelTest
+{
+	private static final long NOW = 1_700_000_000_000L;
+
+	private final ExpiryWheel wheel = new ExpiryWheel();
+	private final List<Integer> expired = new ArrayList<>();
+
+	@Test
+	public void expiresAtDeadline()
+	{
+		wheel.schedule(1, NOW + 5_000);
+		wheel.schedule(2, NOW + 7_000);
+
+		assertEquals(0, advance(NOW + 4_999));
+		assertEquals(1, advance(NOW + 5_000));
+		assertEquals(Arrays.asList(1), expired);
+		assertEquals(1, advance(NOW + 7_000));
+		assertEquals(Arrays.asList(1, 2), expired);
+	}
+
+	@Test
+	public void deadlineBetweenTicksIsNotSkipped()
+	{
+		advance(NOW);
+		wheel.schedule(1, NOW + 90_500);
+
+		// The tick in the deadline's second comes before it; the next one must still find it
+		assertEquals(0, advance(NOW + 90_000));
+		assertEquals(0, advance(NOW + 90_499));
+		assertEquals(1, advance(NOW + 91_000));
+	}
+
+	@Test
+	public void deadlinesBeyondOneTurnWaitForTheirTurn()
+	{
+		advance(NOW);
+		wheel.schedule(1, NOW + 200_000);
+
+		// Position 200 s out shares its bucket with the one 72 s out
+		assertEquals(0, advance(NOW + 72_000));
+		assertEquals(0, advance(NOW + 199_999));
+		assertEquals(1, advance(NOW + 200_000));
+	}
+
+	@Test
+	public void pastDeadlineExpiresOnNextAdvance()
+	{
+		advance(NOW);
+		wheel.schedule(1, NOW - 10_000);
+
+		assertEquals(1, advance(NOW + 1_000));
+	}
+
+	@Test
+	public void rescheduleAndCancelReplaceTheDeadline()
+	{
+		wheel.schedule(1, NOW + 5_000);
+		wheel.schedule(1, NOW + 9_000);
+		wheel.schedule(2, NOW + 5_000);
+		wheel.cancel(2);
+
+		assertEquals(0, advance(NOW + 5_000));
+		assertEquals(1, advance(NOW + 9_000));
+		wheel.cancel(1);
+		assertEquals(0, advance(NOW + 500_000));
+	}
+
+	@Test
+	public void longGapVisitsEveryPositionOnce()
+	{
+		advance(NOW);
+		for (int slot = 0; slot < 10; slot++)
+		{
+			wheel.schedule(slot, NOW + slot * 30_000L + 1);
+		}
+
+		assertEquals(10, advance(NOW + 3_600_000));
+		assertEquals(0, advance(NOW + 3_601_000));
+	}
+
+	private int advance(long now)
+	{
+		return wheel.advance(now, expired::add);
+	}
+}
@@ -0,0 +1,163 @@
+package com.crabscouter;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.World;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.http.api.worlds.WorldResult;
+
+// Stand-ins for RuneLite interfaces, which are far too large to implement in a test. A fake answers what
+// its Answer knows and returns zero, false or null for everything else.
+final class Fakes
+{
+	interface Answer
+	{
+		// Returns null to fall back to the default for the method's return type
+		Object answer(String method, Object[] args);
+	}
+
+	// Mutable state behind a fake actor, so a test can move it or change its target after creating it
+	static final class ActorState
+	{
+		int id;
+		int index;
+		String name;
+		WorldPoint location;
+		Actor interacting;
+		int healthRatio = -1;
+		int healthScale = -1;
+	}
+
+	private Fakes()
+	{
+	}
+
+	static Player player(ActorState state)
+	{
+		return fake(Player.class, (method, args) -> actor(state, method));
+	}
+
+	static NPC npc(ActorState state)
+	{
+		return fake(NPC.class, (method, args) -> actor(state, method));
+	}
+
+	// A hop target as client.createWorld() makes one, which remembers whatever is set on it
+	static World world()
+	{
+		Map<String, Object> fields = new HashMap<>();
+		return fake(World.class, (method, args) ->
+		{
+			if (method.startsWith("set"))
+			{
+				fields.put(method.substring(3), args[0]);
+				return null;
+			}
+			return fields.get(method.substring(3));
+		});
+	}
+
+	// The world list WorldService would fetch, holding just the given worlds
+	static WorldResult worldList(int... ids)
+	{
+		List<net.runelite.http.api.worlds.World> worlds = new ArrayList<>();
+		for (int id : ids)
+		{
+			worlds.add(net.runelite.http.api.worlds.World.builder()
+				.id(id)
+				.address("oldschool" + (id - 300) + ".runescape.com")
+				.players(500)
+				.build());
+		}
+		WorldResult result = new WorldResult();
+		result.setWorlds(worlds);
+		return result;
+	}
+
+	static <T> T fake(Class<T> type, Answer answer)
+	{
+		Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) ->
+		{
+			switch (method.getName())
+			{
+				case "equals":
+					return self == args[0];
+				case "hashCode":
+					return System.identityHashCode(self);
+				case "toString":
+					return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+			}
+
+			Object result = answer.answer(method.getName(), args);
+			return result != null ? result : defaultValue(method.getReturnType());
+		});
+		return type.cast(proxy);
+	}
+
+	private static Object actor(ActorState state, String method)
+	{
+		switch (method)
+		{
+			case "getId":
+				return state.id;
+			case "getIndex":
+				return state.index;
+			case "getName":
+				return state.name;
+			case "getWorldLocation":
+				return state.location;
+			case "getInteracting":
+				return state.interacting;
+			case "getHealthRatio":
+				return state.healthRatio;
+			case "getHealthScale":
+				return state.healthScale;
+			default:
+				return null;
+		}
+	}
+
+	private static Object defaultValue(Class<?> type)
+	{
+		if (!type.isPrimitive() || type == void.class)
+		{
+			return null;
+		}
+		if (type == boolean.class)
+		{
+			return false;
+		}
+		if (type == char.class)
+		{
+			return '\0';
+		}
+		// Proxies unbox the result, so a zero of the wrong width fails the cast
+		if (type == long.class)
+		{
+			return 0L;
+		}
+		if (type == float.class)
+		{
+			return 0f;
+		}
+		if (type == double.class)
+		{
+			return 0.0;
+		}
+		if (type == short.class)
+		{
+			return (short) 0;
+		}
+		if (type == byte.class)
+		{
+			return (byte) 0;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,84 @@
+package com.crabscouter;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class HealthPredictorTest
+{
+	private static final long NOW = 1_700_000_000_000L;
+
+	private final HealthPredictor predictor = new HealthPredictor();
+
+	@Test
+	public void predictsLinearDecline()
+	{
+		// 1% per second
+		assertEquals(80, HealthPredictor.predict(80, 100, 0));
+		assertEquals(70, HealthPredictor.predict(80, 100, 10_000));
+		assertEquals(79, HealthPredictor.predict(80, 100, 1_999));
+		assertEquals(0, HealthPredictor.predict(80, 100, 600_000));
+	}
+
+	@Test
+	public void noRateOrNoTimeKeepsHealth()
+	{
+		assertEquals(80, HealthPredictor.predict(80, 0, 10_000));
+		assertEquals(80, HealthPredictor.predict(80, -50, 10_000));
+		assertEquals(80, HealthPredictor.predict(80, 100, -10_000));
+	}
+
+	@Test
+	public void divergesFullyBeforeFirstReport()
+	{
+		assertEquals(Integer.MAX_VALUE, predictor.divergence(80, NOW));
+
+		predictor.onReported(80, 100, NOW);
+		predictor.reset();
+		assertEquals(Integer.MAX_VALUE, predictor.divergence(80, NOW));
+	}
+
+	@Test
+	public void divergenceIsMeasuredFromTheExtrapolation()
+	{
+		predictor.onReported(80, 100, NOW);
+
+		assertEquals(0, predictor.divergence(75, NOW + 5_000));
+		assertEquals(5, predictor.divergence(80, NOW + 5_000));
+		assertEquals(2, predictor.divergence(68, NOW + 10_000));
+	}
+
+	@Test
+	public void zeroRateDivergesByTheHealthStep()
+	{
+		// What a reporter sees when the server didn't accept damage rates
+		predictor.onReported(80, 0, NOW);
+
+		assertEquals(6, predictor.divergence(74, NOW + 60_000));
+	}
+
+	@Test
+	public void measuresAverageRateSinceLastReport()
+	{
+		assertEquals(0, predictor.measureRate(80, NOW));
+
+		predictor.onReported(80, 0, NOW);
+		assertEquals(100, predictor.measureRate(70, NOW + 10_000));
+		assertEquals(8_000, predictor.measureRate(0, NOW + 1_000));
+	}
+
+	@Test
+	public void shortWindowKeepsPreviousRate()
+	{
+		predictor.onReported(80, 150, NOW);
+
+		assertEquals(150, predictor.measureRate(60, NOW + 500));
+	}
+
+	@Test
+	public void healResetsRate()
+	{
+		predictor.onReported(20, 150, NOW);
+
+		assertEquals(0, predictor.measureRate(100, NOW + 10_000));
+	}
+}
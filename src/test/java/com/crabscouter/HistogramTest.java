@@ -0,0 +1,66 @@
+package com.crabscouter;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest
+{
+	@Test
+	public void smallValuesHaveTheirOwnBucket()
+	{
+		for (int value = 0; value < 8; value++)
+		{
+			assertEquals(value, Histogram.bucketIndex(value));
+			assertEquals(value, Histogram.bucketLowerBound(value));
+		}
+	}
+
+	@Test
+	public void bucketBoundsAreContiguous()
+	{
+		// Each bucket starts where the previous one ends, up to the bucket holding Long.MAX_VALUE
+		int last = Histogram.bucketIndex(Long.MAX_VALUE);
+		for (int index = 1; index <= last; index++)
+		{
+			long lower = Histogram.bucketLowerBound(index);
+			assertEquals(index, Histogram.bucketIndex(lower));
+			assertEquals(index - 1, Histogram.bucketIndex(lower - 1));
+			assertTrue(lower > Histogram.bucketLowerBound(index - 1));
+		}
+	}
+
+	@Test
+	public void relativeErrorIsBounded()
+	{
+		long[] values = {9, 100, 1_000, 12_345, 1_000_000, 987_654_321, Long.MAX_VALUE / 3};
+		for (long value : values)
+		{
+			long lower = Histogram.bucketLowerBound(Histogram.bucketIndex(value));
+			assertTrue(lower <= value);
+			assertTrue((value - lower) * 8 <= value);
+		}
+	}
+
+	@Test
+	public void percentilesAndStats()
+	{
+		Histogram histogram = new Histogram();
+		for (int value = 1; value <= 100; value++)
+		{
+			histogram.record(value);
+		}
+		histogram.record(-5);
+
+		assertEquals(101, histogram.getCount());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50, histogram.getMean());
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(Histogram.bucketLowerBound(Histogram.bucketIndex(50)), histogram.getPercentile(50));
+		assertEquals(Histogram.bucketLowerBound(Histogram.bucketIndex(100)), histogram.getPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+}
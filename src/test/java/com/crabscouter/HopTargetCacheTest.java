@@ -0,0 +1,103 @@
+package com.crabscouter;
+
+import net.runelite.api.Client;
+import net.runelite.api.World;
+import net.runelite.http.api.worlds.WorldResult;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HopTargetCacheTest
+{
+	private int created;
+	private final Client client = Fakes.fake(Client.class, (method, args) ->
+	{
+		if (method.equals("createWorld"))
+		{
+			created++;
+			return Fakes.world();
+		}
+		return null;
+	});
+	private final HopTargetCache cache = new HopTargetCache(client);
+	private final WorldStore store = new WorldStore();
+
+	@Test
+	public void buildsTargetsForFeedWorlds()
+	{
+		feed(301, 302);
+		assertFalse(cache.covers(store.snapshot()));
+
+		cache.rebuild(Fakes.worldList(301, 302, 303), store.snapshot());
+
+		assertEquals(301, cache.get(301).getId());
+		assertEquals(302, cache.get(302).getId());
+		// Only worlds in the feed get a target
+		assertNull(cache.get(303));
+		assertTrue(cache.covers(store.snapshot()));
+		assertEquals(2, created);
+	}
+
+	@Test
+	public void unchangedListEntriesKeepTheirTargets()
+	{
+		WorldResult worlds = Fakes.worldList(301, 302);
+		feed(301);
+		cache.rebuild(worlds, store.snapshot());
+		World target = cache.get(301);
+
+		feed(301, 302);
+		cache.rebuild(worlds, store.snapshot());
+
+		assertSame(target, cache.get(301));
+		assertEquals(2, created);
+
+		// A fresh world list builds new targets
+		cache.rebuild(Fakes.worldList(301, 302), store.snapshot());
+		assertEquals(4, created);
+	}
+
+	@Test
+	public void worldsLeavingTheFeedLoseTheirTargets()
+	{
+		feed(301, 302);
+		cache.rebuild(Fakes.worldList(301, 302), store.snapshot());
+
+		feed(302);
+		cache.rebuild(Fakes.worldList(301, 302), store.snapshot());
+
+		assertNull(cache.get(301));
+		assertNotNull(cache.get(302));
+	}
+
+	@Test
+	public void worldsMissingFromTheListHaveNoTarget()
+	{
+		feed(301, 330);
+		cache.rebuild(Fakes.worldList(301), store.snapshot());
+
+		assertNull(cache.get(330));
+		assertFalse(cache.covers(store.snapshot()));
+		assertNull(cache.get(WorldStore.MIN_WORLD - 1));
+
+		cache.clear();
+		assertNull(cache.get(301));
+	}
+
+	private void feed(int... worlds)
+	{
+		WorldBatch batch = new WorldBatch();
+		for (int world : worlds)
+		{
+			batch.add(world, 4913, 80, 5, 2, 0, 1000);
+		}
+		store.beginSnapshot();
+		store.upsertAll(batch);
+		store.endSnapshot();
+		store.publish();
+	}
+}
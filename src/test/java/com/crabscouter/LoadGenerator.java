@@ -0,0 +1,311 @@
+package com.crabscouter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+// Drives a scouting server with simulated reporters and measures real CrabScouterWebSocketClient listeners.
+// Every simulated world has one reporter connection sending reports at --rate per second; reporters leave
+// and rejoin with probability --churn per second, and every --burst-every seconds --burst extra reports
+// are fired at once. Listeners record end-to-end latency (server receipt to applied in the client store),
+// parse time, throughput and bandwidth, and heap use is sampled once a second. Listeners negotiate binary
+// framing and compressed broadcasts with the in-process server unless --binary false or --compression false
+// is given; reporters always speak JSON. Listeners subscribe to a filter when given --chunk (a region id) or
+// --max-players, to compare filtered bandwidth against the full feed.
+//
+// ./gradlew loadTest -Pargs="--worlds 300 --listeners 20 --rate 2 --duration 60"
+// Without --url a LocalScoutServer is started in-process.
+@Slf4j
+public class LoadGenerator
+{
+	private static final long TICK_MILLIS = 100;
+	private static final int[] CHUNKS = {4913, 4911, 5424};
+
+	private final Map<String, String> options;
+	private final Random random = new Random(1);
+	private final Gson gson = new Gson();
+	private final OkHttpClient httpClient = new OkHttpClient();
+	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+	private final Histogram latency = new Histogram();
+	private final LongAdder reportsSent = new LongAdder();
+	private final List<ProbePlugin> probes = new ArrayList<>();
+	private final List<CrabScouterWebSocketClient> listeners = new ArrayList<>();
+	private long peakHeap;
+
+	LoadGenerator(Map<String, String> options)
+	{
+		this.options = options;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, String> options = new HashMap<>();
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+		}
+
+		new LoadGenerator(options).run();
+		System.exit(0);
+	}
+
+	void run() throws Exception
+	{
+		int worldCount = Math.min(intOption("worlds", 200), WorldStore.CAPACITY - 1);
+		int listenerCount = intOption("listeners", 10);
+		double rate = doubleOption("rate", 1.0);
+		double churn = doubleOption("churn", 0.01);
+		int burst = intOption("burst", 0);
+		int burstEvery = intOption("burst-every", 10);
+		int duration = intOption("duration", 30);
+		boolean binary = !"false".equals(options.get("binary"));
+		boolean compression = !"false".equals(options.get("compression"));
+		int[] filterChunks = options.containsKey("chunk") ? new int[]{intOption("chunk", 0)} : new int[0];
+		WorldFilter filter = new WorldFilter(filterChunks, new int[0], intOption("max-players", 0), 0);
+
+		LocalScoutServer localServer = null;
+		String url = options.get("url");
+		if (url == null)
+		{
+			Set<String> capabilities = new HashSet<>(LocalScoutServer.CAPABILITIES);
+			if (!binary)
+			{
+				capabilities.remove(CrabScouterBinaryProtocol.CAPABILITY);
+			}
+			if (!compression)
+			{
+				capabilities.remove(CrabScouterCompression.CAPABILITY);
+			}
+			localServer = new LocalScoutServer(capabilities);
+			localServer.start(0);
+			url = localServer.getUrl();
+		}
+
+		log.info("Load test against {}: {} worlds, {} listeners, {} reports/s/world, churn {}, burst {} every {}s, {}s, binary {}, compression {}",
+			url, worldCount, listenerCount, rate, churn, burst, burstEvery, duration, binary, compression);
+		if (!filter.isAll())
+		{
+			log.info("Listeners subscribe to chunks {}, max players {}", Arrays.toString(filterChunks), filter.getMaxPlayers());
+		}
+
+		for (int i = 0; i < listenerCount; i++)
+		{
+			ProbePlugin probe = new ProbePlugin();
+			CrabScouterWebSocketClient client = new CrabScouterWebSocketClient(probe, url, httpClient, gson, executor);
+			client.setFilter(filter);
+			client.connect();
+			probes.add(probe);
+			listeners.add(client);
+		}
+
+		List<Reporter> reporters = new ArrayList<>();
+		for (int i = 0; i < worldCount; i++)
+		{
+			Reporter reporter = new Reporter(WorldStore.MIN_WORLD + 1 + i, CHUNKS[i % CHUNKS.length], url);
+			reporter.join();
+			reporters.add(reporter);
+		}
+
+		double reportChance = rate * TICK_MILLIS / 1000.0;
+		double churnChance = churn * TICK_MILLIS / 1000.0;
+		long start = System.nanoTime();
+		long ticks = 0;
+
+		while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(duration))
+		{
+			for (Reporter reporter : reporters)
+			{
+				if (random.nextDouble() < churnChance)
+				{
+					reporter.rejoin();
+				}
+				else if (random.nextDouble() < reportChance)
+				{
+					reporter.report();
+				}
+			}
+
+			ticks++;
+			if (burst > 0 && ticks % (burstEvery * 1000 / TICK_MILLIS) == 0)
+			{
+				for (int i = 0; i < burst; i++)
+				{
+					reporters.get(random.nextInt(reporters.size())).report();
+				}
+			}
+
+			if (ticks % (1000 / TICK_MILLIS) == 0)
+			{
+				sampleHeap();
+			}
+
+			Thread.sleep(TICK_MILLIS);
+		}
+
+		double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+		printResults(seconds, localServer);
+
+		for (Reporter reporter : reporters)
+		{
+			reporter.close();
+		}
+		for (CrabScouterWebSocketClient client : listeners)
+		{
+			client.close();
+		}
+		if (localServer != null)
+		{
+			localServer.close();
+		}
+		executor.shutdownNow();
+	}
+
+	private void printResults(double seconds, LocalScoutServer localServer)
+	{
+		long messagesIn = 0;
+		long bytesIn = 0;
+		long compressedIn = 0;
+		long inflatedIn = 0;
+		Histogram parse = null;
+		for (ProbePlugin probe : probes)
+		{
+			messagesIn += probe.getMetrics().messagesIn.sum();
+			bytesIn += probe.getMetrics().bytesIn.sum();
+			compressedIn += probe.getMetrics().compressedBytesIn.sum();
+			inflatedIn += probe.getMetrics().inflatedBytesIn.sum();
+			if (parse == null)
+			{
+				parse = probe.getMetrics().messageParse;
+			}
+		}
+
+		System.out.printf("Reports sent:         %d (%.1f/s)%n", reportsSent.sum(), reportsSent.sum() / seconds);
+		System.out.printf("Client messages in:   %d (%.1f/s per listener)%n", messagesIn,
+			probes.isEmpty() ? 0 : messagesIn / seconds / probes.size());
+		System.out.printf("Client bytes in:      %.1f KB/s per listener%n",
+			probes.isEmpty() ? 0 : bytesIn / 1024.0 / seconds / probes.size());
+		if (compressedIn > 0)
+		{
+			System.out.printf("Compression:          %.1f KB from %.1f KB (%.1fx)%n",
+				compressedIn / 1024.0, inflatedIn / 1024.0, inflatedIn / (double) compressedIn);
+		}
+		System.out.printf("End-to-end latency:   p50 %d ms, p99 %d ms, max %d ms (%d samples)%n",
+			latency.getPercentile(50), latency.getPercentile(99), latency.getMax(), latency.getCount());
+		if (parse != null)
+		{
+			System.out.printf("Client parse+apply:   p50 %d us, p99 %d us (first listener)%n",
+				parse.getPercentile(50) / 1000, parse.getPercentile(99) / 1000);
+		}
+		System.out.printf("Peak heap used:       %d MB%n", peakHeap / (1024 * 1024));
+		if (localServer != null)
+		{
+			System.out.printf("Server messages:      %d in, %d out%n", localServer.getMessagesIn(), localServer.getMessagesOut());
+			System.out.printf("Server bytes out:     %.1f KB on the wire for %.1f KB uncompressed%n",
+				localServer.getWireBytesOut() / 1024.0, localServer.getBytesOut() / 1024.0);
+		}
+	}
+
+	private void sampleHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	private int intOption(String name, int defaultValue)
+	{
+		return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+	}
+
+	private double doubleOption(String name, double defaultValue)
+	{
+		return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+	}
+
+	// Real plugin state and client decode path, with latency recorded as patches are applied
+	private class ProbePlugin extends CrabScouterPlugin
+	{
+		@Override
+		public void onWorldsPatch(WorldBatch upserts, int[] removes)
+		{
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < upserts.size(); i++)
+			{
+				latency.record(now - upserts.getLastUpdate(i));
+			}
+			super.onWorldsPatch(upserts, removes);
+		}
+	}
+
+	// A lightweight simulated reporter speaking raw JSON over its own connection
+	private class Reporter extends WebSocketListener
+	{
+		private final int world;
+		private final int chunk;
+		private final WebSocket socket;
+		private int health = 100;
+
+		Reporter(int world, int chunk, String url)
+		{
+			this.world = world;
+			this.chunk = chunk;
+			this.socket = httpClient.newWebSocket(new Request.Builder().url(url).build(), this);
+		}
+
+		void join()
+		{
+			JsonObject message = new JsonObject();
+			message.addProperty("type", "join");
+			message.addProperty("world", world);
+			message.addProperty("chunk", chunk);
+			socket.send(message.toString());
+		}
+
+		void rejoin()
+		{
+			JsonObject message = new JsonObject();
+			message.addProperty("type", "leave");
+			message.addProperty("world", world);
+			socket.send(message.toString());
+			join();
+		}
+
+		void report()
+		{
+			health = health <= 0 ? 100 : health - 1 - random.nextInt(3);
+
+			JsonObject message = new JsonObject();
+			message.addProperty("type", "report");
+			message.addProperty("world", world);
+			message.addProperty("chunk", chunk);
+			message.addProperty("health", Math.max(0, health));
+			message.addProperty("totalPlayers", 5 + random.nextInt(30));
+			message.addProperty("attackingPlayers", random.nextInt(5));
+			if (socket.send(message.toString()))
+			{
+				reportsSent.increment();
+			}
+		}
+
+		void close()
+		{
+			socket.close(1000, null);
+		}
+	}
+}
@@ -0,0 +1,700 @@
+package com.crabscouter;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+// Local stand-in for the scouting worker, built on MockWebServer. It implements hello/welcome, join, leave,
+// report, resign, resync and subscribe from clients, and role, snapshot and sequenced patch broadcasts to
+// clients. The first client to join a world becomes its reporter. Clients whose hello offers binary framing,
+// when the server was started with it, are answered in binary; everyone else gets JSON. Either kind of client
+// frame is accepted from anyone. Damage rates are only taken from reporters that negotiated damage-rate-v1,
+// and clients that negotiated deflate-v1 get every message after the welcome as a compressed frame. Clients
+// that subscribe with a filter get their own snapshots and patches holding only matching worlds, numbered
+// with their own seq, and a remove when a world they were sent stops matching.
+//
+// Run it standalone with ./gradlew localServer and point the client at it with
+// ./gradlew run -Pcrabscouter.server=ws://localhost:8787
+@Slf4j
+public class LocalScoutServer implements AutoCloseable
+{
+	public static final int DEFAULT_PORT = 8787;
+	// Every optional capability implemented here
+	public static final Set<String> CAPABILITIES = Collections.unmodifiableSet(new LinkedHashSet<>(
+		Arrays.asList(CrabScouterBinaryProtocol.CAPABILITY, HealthPredictor.CAPABILITY,
+			CrabScouterCompression.CAPABILITY, WorldFilter.CAPABILITY)));
+
+	// Upper bound on an encoded world record: two shorts, a byte and four varints
+	private static final int MAX_RECORD_BYTES = 32;
+
+	private final MockWebServer server = new MockWebServer();
+	private final Set<Session> sessions = new LinkedHashSet<>();
+	private final Map<Integer, WorldRecord> worlds = new TreeMap<>();
+	private final Map<Integer, Session> reporters = new TreeMap<>();
+	private final Set<String> capabilities;
+	private long seq;
+
+	private final LongAdder messagesIn = new LongAdder();
+	private final LongAdder messagesOut = new LongAdder();
+	// Bytes of messages sent, and what actually went on the wire after compression
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder wireBytesOut = new LongAdder();
+
+	public LocalScoutServer()
+	{
+		this(CAPABILITIES);
+	}
+
+	// Starts a server that accepts only the given capabilities, e.g. none to keep every client on JSON
+	public LocalScoutServer(Set<String> capabilities)
+	{
+		this.capabilities = capabilities;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		LocalScoutServer server = new LocalScoutServer();
+		server.start(port);
+		log.info("Local scout server listening on {}", server.getUrl());
+		Thread.currentThread().join();
+	}
+
+	public void start(int port) throws IOException
+	{
+		server.setDispatcher(new Dispatcher()
+		{
+			@Override
+			public MockResponse dispatch(RecordedRequest request)
+			{
+				return new MockResponse().withWebSocketUpgrade(new Session());
+			}
+		});
+		server.start(port);
+	}
+
+	public String getUrl()
+	{
+		return "ws://" + server.getHostName() + ":" + server.getPort();
+	}
+
+	public long getMessagesIn()
+	{
+		return messagesIn.sum();
+	}
+
+	public long getMessagesOut()
+	{
+		return messagesOut.sum();
+	}
+
+	public long getBytesOut()
+	{
+		return bytesOut.sum();
+	}
+
+	public long getWireBytesOut()
+	{
+		return wireBytesOut.sum();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		server.shutdown();
+	}
+
+	private synchronized void handle(Session session, String text)
+	{
+		messagesIn.increment();
+		JsonObject message = new JsonParser().parse(text).getAsJsonObject();
+		String type = message.get("type").getAsString();
+
+		switch (type)
+		{
+			case "hello":
+				hello(session, message.has("capabilities") ? message.getAsJsonArray("capabilities") : new JsonArray());
+				break;
+
+			case "subscribe":
+				subscribe(session, readSubscribe(message));
+				break;
+
+			case "join":
+				join(session, message.get("world").getAsInt(), message.get("chunk").getAsInt());
+				break;
+
+			case "leave":
+				leave(session);
+				break;
+
+			case "resign":
+				resign(session);
+				break;
+
+			case "report":
+				report(session, message.get("world").getAsInt(), message.get("chunk").getAsInt(),
+					message.get("health").getAsInt(), message.get("totalPlayers").getAsInt(),
+					message.get("attackingPlayers").getAsInt(),
+					message.has("damageRate") ? message.get("damageRate").getAsInt() : 0);
+				break;
+
+			case "resync":
+				sendSnapshot(session);
+				break;
+
+			default:
+				log.debug("Ignoring unknown message type {}", type);
+		}
+	}
+
+	private synchronized void handle(Session session, ByteBuffer buf)
+	{
+		messagesIn.increment();
+		int opcode = buf.get() & 0xFF;
+
+		switch (opcode)
+		{
+			case CrabScouterBinaryProtocol.OP_JOIN:
+				join(session, CrabScouterBinaryProtocol.getShort(buf), CrabScouterBinaryProtocol.getShort(buf));
+				break;
+
+			case CrabScouterBinaryProtocol.OP_LEAVE:
+				leave(session);
+				break;
+
+			case CrabScouterBinaryProtocol.OP_RESIGN:
+				resign(session);
+				break;
+
+			case CrabScouterBinaryProtocol.OP_REPORT:
+				report(session, CrabScouterBinaryProtocol.getShort(buf), CrabScouterBinaryProtocol.getShort(buf),
+					buf.get() & 0xFF, (int) CrabScouterBinaryProtocol.getVarint(buf),
+					(int) CrabScouterBinaryProtocol.getVarint(buf), (int) CrabScouterBinaryProtocol.getVarint(buf));
+				break;
+
+			case CrabScouterBinaryProtocol.OP_RESYNC:
+				sendSnapshot(session);
+				break;
+
+			case CrabScouterBinaryProtocol.OP_SUBSCRIBE:
+				subscribe(session, readSubscribe(buf));
+				break;
+
+			default:
+				log.debug("Ignoring unknown binary opcode {}", opcode);
+		}
+	}
+
+	private void hello(Session session, JsonArray offered)
+	{
+		JsonArray accepted = new JsonArray();
+		boolean binary = false;
+		boolean damageRate = false;
+		boolean deflate = false;
+		for (JsonElement capability : offered)
+		{
+			String name = capability.getAsString();
+			if (capabilities.contains(name))
+			{
+				accepted.add(name);
+				binary |= name.equals(CrabScouterBinaryProtocol.CAPABILITY);
+				damageRate |= name.equals(HealthPredictor.CAPABILITY);
+				deflate |= name.equals(CrabScouterCompression.CAPABILITY);
+			}
+		}
+
+		JsonObject welcome = new JsonObject();
+		welcome.addProperty("type", "welcome");
+		welcome.add("capabilities", accepted);
+		// The welcome itself is always JSON; the session switches format after it
+		send(session, welcome.toString());
+		session.binary = binary;
+		session.damageRate = damageRate;
+		session.deflate = deflate;
+	}
+
+	// An empty filter puts the session back on the shared feed; either way it starts over from a snapshot
+	private void subscribe(Session session, WorldFilter filter)
+	{
+		session.filter = filter.isAll() ? null : filter;
+		sendSnapshot(session);
+	}
+
+	private void join(Session session, int world, int chunk)
+	{
+		leave(session);
+		session.world = world;
+		session.chunk = chunk;
+		if (!reporters.containsKey(world))
+		{
+			reporters.put(world, session);
+		}
+		sendRole(session);
+		sendSnapshot(session);
+	}
+
+	private void resign(Session session)
+	{
+		if (session.world != -1 && reporters.get(session.world) == session)
+		{
+			reassignReporter(session.world, session);
+		}
+	}
+
+	private void report(Session session, int world, int chunk, int health, int totalPlayers, int attackingPlayers,
+		int damageRate)
+	{
+		if (reporters.get(world) != session)
+		{
+			return;
+		}
+
+		WorldRecord record = new WorldRecord();
+		record.world = world;
+		record.chunk = chunk;
+		record.health = health;
+		record.totalPlayers = totalPlayers;
+		record.attackingPlayers = attackingPlayers;
+		record.damageRate = session.damageRate ? damageRate : 0;
+		record.lastUpdate = System.currentTimeMillis();
+		worlds.put(world, record);
+
+		broadcastPatch(Collections.singletonList(record), Collections.emptyList());
+	}
+
+	private synchronized void disconnect(Session session)
+	{
+		leave(session);
+		sessions.remove(session);
+	}
+
+	private void leave(Session session)
+	{
+		int world = session.world;
+		if (world == -1)
+		{
+			return;
+		}
+
+		session.world = -1;
+		if (reporters.get(world) == session)
+		{
+			reassignReporter(world, session);
+		}
+	}
+
+	private void reassignReporter(int world, Session previous)
+	{
+		reporters.remove(world);
+
+		for (Session candidate : sessions)
+		{
+			if (candidate != previous && candidate.world == world)
+			{
+				reporters.put(world, candidate);
+				sendRole(candidate);
+				sendRole(previous);
+				return;
+			}
+		}
+
+		sendRole(previous);
+		if (worlds.remove(world) != null)
+		{
+			broadcastPatch(Collections.emptyList(), Collections.singletonList(world));
+		}
+	}
+
+	private void sendRole(Session session)
+	{
+		boolean reporter = session.world != -1 && reporters.get(session.world) == session;
+		if (session.binary)
+		{
+			ByteString bytes = ByteString.of((byte) CrabScouterBinaryProtocol.OP_ROLE, (byte) (reporter ? 1 : 0));
+			send(session, bytes, session.deflate ? deflate(bytes) : null);
+			return;
+		}
+
+		JsonObject role = new JsonObject();
+		role.addProperty("type", "role");
+		role.addProperty("isReporter", reporter);
+		String text = role.toString();
+		send(session, text, session.deflate ? deflate(text) : null);
+	}
+
+	// Worlds matching the session's filter, all of them without one, numbered on the seq the session follows
+	private void sendSnapshot(Session session)
+	{
+		List<WorldRecord> snapshot = new ArrayList<>(worlds.size());
+		session.visible.clear();
+		for (WorldRecord record : worlds.values())
+		{
+			if (session.filter == null || record.matches(session.filter))
+			{
+				snapshot.add(record);
+				session.visible.add(record.world);
+			}
+		}
+		sendWorlds(session, true, session.filter == null ? seq : session.seq, snapshot, Collections.emptyList());
+	}
+
+	private void broadcastPatch(List<WorldRecord> upserts, List<Integer> removes)
+	{
+		// Encoded and compressed at most once per format for everyone without a filter
+		long patchSeq = ++seq;
+		String text = null;
+		ByteString deflatedText = null;
+		ByteString bytes = null;
+		ByteString deflatedBytes = null;
+		for (Session session : sessions)
+		{
+			if (session.filter != null)
+			{
+				sendFilteredPatch(session, upserts, removes);
+			}
+			else if (session.binary)
+			{
+				if (bytes == null)
+				{
+					bytes = encodeBinary(CrabScouterBinaryProtocol.OP_PATCH, patchSeq, upserts, removes,
+						System.currentTimeMillis());
+				}
+				if (session.deflate && deflatedBytes == null)
+				{
+					deflatedBytes = deflate(bytes);
+				}
+				send(session, bytes, session.deflate ? deflatedBytes : null);
+			}
+			else
+			{
+				if (text == null)
+				{
+					text = encodeJson("patch", patchSeq, upserts, removes);
+				}
+				if (session.deflate && deflatedText == null)
+				{
+					deflatedText = deflate(text);
+				}
+				send(session, text, session.deflate ? deflatedText : null);
+			}
+		}
+	}
+
+	// Only worlds that match, plus removes for worlds the session was sent that no longer do. Nothing is sent,
+	// and the session's seq doesn't move, when none of the patch concerns it.
+	private void sendFilteredPatch(Session session, List<WorldRecord> upserts, List<Integer> removes)
+	{
+		List<WorldRecord> matching = new ArrayList<>(upserts.size());
+		List<Integer> removed = new ArrayList<>();
+		for (WorldRecord record : upserts)
+		{
+			if (record.matches(session.filter))
+			{
+				matching.add(record);
+				session.visible.add(record.world);
+			}
+			else if (session.visible.remove(record.world))
+			{
+				removed.add(record.world);
+			}
+		}
+		for (int world : removes)
+		{
+			if (session.visible.remove(world))
+			{
+				removed.add(world);
+			}
+		}
+
+		if (!matching.isEmpty() || !removed.isEmpty())
+		{
+			sendWorlds(session, false, ++session.seq, matching, removed);
+		}
+	}
+
+	// A snapshot or patch for one session, in its format
+	private void sendWorlds(Session session, boolean snapshot, long seq, Collection<WorldRecord> upserts,
+		List<Integer> removes)
+	{
+		if (session.binary)
+		{
+			ByteString bytes = encodeBinary(snapshot ? CrabScouterBinaryProtocol.OP_SNAPSHOT
+				: CrabScouterBinaryProtocol.OP_PATCH, seq, upserts, removes, System.currentTimeMillis());
+			send(session, bytes, session.deflate ? deflate(bytes) : null);
+		}
+		else
+		{
+			String text = encodeJson(snapshot ? "snapshot" : "patch", seq, upserts, removes);
+			send(session, text, session.deflate ? deflate(text) : null);
+		}
+	}
+
+	static String encodeJson(String type, long seq, Collection<WorldRecord> upserts, List<Integer> removes)
+	{
+		JsonArray array = new JsonArray();
+		for (WorldRecord record : upserts)
+		{
+			array.add(record.toJson());
+		}
+
+		JsonObject message = new JsonObject();
+		message.addProperty("type", type);
+		message.addProperty("seq", seq);
+		if (type.equals("snapshot"))
+		{
+			message.add("worlds", array);
+		}
+		else
+		{
+			JsonArray removeArray = new JsonArray();
+			for (int world : removes)
+			{
+				removeArray.add(world);
+			}
+			message.add("upserts", array);
+			message.add("removes", removeArray);
+		}
+		return message.toString();
+	}
+
+	// The frame layout CrabScouterMessageDecoder reads: seq, frame time, then records whose age is relative to it
+	static ByteString encodeBinary(int opcode, long seq, Collection<WorldRecord> upserts, List<Integer> removes,
+		long now)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(32 + upserts.size() * MAX_RECORD_BYTES + removes.size() * 2);
+		buf.put((byte) opcode);
+		CrabScouterBinaryProtocol.putVarint(buf, seq);
+		CrabScouterBinaryProtocol.putVarint(buf, now);
+		CrabScouterBinaryProtocol.putVarint(buf, upserts.size());
+		for (WorldRecord record : upserts)
+		{
+			CrabScouterBinaryProtocol.putShort(buf, record.world);
+			CrabScouterBinaryProtocol.putShort(buf, record.chunk);
+			buf.put((byte) record.health);
+			CrabScouterBinaryProtocol.putVarint(buf, record.totalPlayers);
+			CrabScouterBinaryProtocol.putVarint(buf, record.attackingPlayers);
+			CrabScouterBinaryProtocol.putVarint(buf, record.damageRate);
+			CrabScouterBinaryProtocol.putVarint(buf, Math.max(0, now - record.lastUpdate));
+		}
+
+		if (opcode == CrabScouterBinaryProtocol.OP_PATCH)
+		{
+			CrabScouterBinaryProtocol.putVarint(buf, removes.size());
+			for (int world : removes)
+			{
+				CrabScouterBinaryProtocol.putShort(buf, world);
+			}
+		}
+		return ByteString.of(buf.array(), 0, buf.position());
+	}
+
+	static ByteString deflate(String text)
+	{
+		return ByteString.of(CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_TEXT,
+			text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	static ByteString deflate(ByteString bytes)
+	{
+		return ByteString.of(CrabScouterCompression.deflate(CrabScouterBinaryProtocol.OP_DEFLATED_BINARY,
+			bytes.toByteArray()));
+	}
+
+	private static int[] toIntArray(JsonArray array)
+	{
+		int[] result = new int[array == null ? 0 : array.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = array.get(i).getAsInt();
+		}
+		return result;
+	}
+
+	static WorldFilter readSubscribe(JsonObject message)
+	{
+		return new WorldFilter(toIntArray(message.getAsJsonArray("chunks")),
+			toIntArray(message.getAsJsonArray("worlds")), message.get("maxPlayers").getAsInt(),
+			message.get("minHealth").getAsInt());
+	}
+
+	// The layout CrabScouterBinaryProtocol.encodeSubscribe writes, after the opcode
+	static WorldFilter readSubscribe(ByteBuffer buf)
+	{
+		int[] chunks = getShorts(buf);
+		int[] worlds = getShorts(buf);
+		int maxPlayers = (int) CrabScouterBinaryProtocol.getVarint(buf);
+		return new WorldFilter(chunks, worlds, maxPlayers, buf.get() & 0xFF);
+	}
+
+	// A varint count followed by that many shorts
+	private static int[] getShorts(ByteBuffer buf)
+	{
+		int[] result = new int[(int) CrabScouterBinaryProtocol.getVarint(buf)];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = CrabScouterBinaryProtocol.getShort(buf);
+		}
+		return result;
+	}
+
+	private void send(Session session, String text)
+	{
+		send(session, text, null);
+	}
+
+	// Sends the compressed form when there is one
+	private void send(Session session, String text, ByteString deflated)
+	{
+		if (session.socket == null)
+		{
+			return;
+		}
+
+		int size = text.getBytes(StandardCharsets.UTF_8).length;
+		boolean sent = deflated != null ? session.socket.send(deflated) : session.socket.send(text);
+		if (sent)
+		{
+			messagesOut.increment();
+			bytesOut.add(size);
+			wireBytesOut.add(deflated != null ? deflated.size() : size);
+		}
+	}
+
+	private void send(Session session, ByteString bytes, ByteString deflated)
+	{
+		if (session.socket == null)
+		{
+			return;
+		}
+
+		ByteString frame = deflated != null ? deflated : bytes;
+		if (session.socket.send(frame))
+		{
+			messagesOut.increment();
+			bytesOut.add(bytes.size());
+			wireBytesOut.add(frame.size());
+		}
+	}
+
+	static class WorldRecord
+	{
+		int world;
+		int chunk;
+		int health;
+		int totalPlayers;
+		int attackingPlayers;
+		int damageRate;
+		long lastUpdate;
+
+		boolean matches(WorldFilter filter)
+		{
+			return filter.matches(world, chunk, health, totalPlayers);
+		}
+
+		JsonObject toJson()
+		{
+			JsonObject json = new JsonObject();
+			json.addProperty("world", world);
+			json.addProperty("chunk", chunk);
+			json.addProperty("health", health);
+			json.addProperty("totalPlayers", totalPlayers);
+			json.addProperty("attackingPlayers", attackingPlayers);
+			json.addProperty("damageRate", damageRate);
+			json.addProperty("lastUpdate", lastUpdate);
+			return json;
+		}
+	}
+
+	private class Session extends WebSocketListener
+	{
+		WebSocket socket;
+		boolean binary;
+		boolean damageRate;
+		boolean deflate;
+		int world = -1;
+		int chunk = -1;
+		// Set by subscribe; such sessions get their own patches numbered by seq
+		WorldFilter filter;
+		long seq;
+		final Set<Integer> visible = new HashSet<>();
+
+		@Override
+		public void onOpen(WebSocket webSocket, Response response)
+		{
+			synchronized (LocalScoutServer.this)
+			{
+				socket = webSocket;
+				sessions.add(this);
+			}
+		}
+
+		@Override
+		public void onMessage(WebSocket webSocket, String text)
+		{
+			try
+			{
+				handle(this, text);
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Bad message from client: {}", text, e);
+			}
+		}
+
+		@Override
+		public void onMessage(WebSocket webSocket, ByteString bytes)
+		{
+			try
+			{
+				handle(this, bytes.asByteBuffer());
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Bad binary message of {} bytes from client", bytes.size(), e);
+			}
+		}
+
+		@Override
+		public void onClosing(WebSocket webSocket, int code, String reason)
+		{
+			webSocket.close(1000, null);
+		}
+
+		@Override
+		public void onClosed(WebSocket webSocket, int code, String reason)
+		{
+			disconnect(this);
+		}
+
+		@Override
+		public void onFailure(WebSocket webSocket, Throwable t, Response response)
+		{
+			disconnect(this);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.crabscouter;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import okio.ByteString;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// The stand-in server's frames must read back through the client's decoder in every format, compressed or not,
+// and what the client sends must read back through the server
+public class LocalScoutServerTest
+{
+	private static final long NOW = 1_700_000_005_000L;
+
+	private final CrabScouterMessageDecoder decoder = new CrabScouterMessageDecoder();
+
+	@Test
+	public void binarySnapshotDecodes() throws Exception
+	{
+		decoder.decode(LocalScoutServer.encodeBinary(CrabScouterBinaryProtocol.OP_SNAPSHOT, 12,
+			Arrays.asList(record(420, 80, NOW - 3000), record(301, 100, NOW)), Collections.emptyList(), NOW)
+			.asByteBuffer());
+
+		assertEquals("snapshot", decoder.getType());
+		assertEquals(12, decoder.getSeq());
+		assertEquals(2, decoder.getWorlds().size());
+		assertWorld(0, 420, 80, NOW - 3000);
+		assertWorld(1, 301, 100, NOW);
+	}
+
+	@Test
+	public void binaryPatchDecodes() throws Exception
+	{
+		decoder.decode(LocalScoutServer.encodeBinary(CrabScouterBinaryProtocol.OP_PATCH, 13,
+			Collections.singletonList(record(330, 3, NOW - 1)), Arrays.asList(301, 302), NOW).asByteBuffer());
+
+		assertEquals("patch", decoder.getType());
+		assertEquals(13, decoder.getSeq());
+		assertWorld(0, 330, 3, NOW - 1);
+		assertArrayEquals(new int[]{301, 302}, decoder.getRemoves());
+	}
+
+	@Test
+	public void jsonPatchDecodes() throws Exception
+	{
+		decoder.decode(LocalScoutServer.encodeJson("patch", 14, Collections.singletonList(record(330, 3, NOW)),
+			Collections.singletonList(301)));
+
+		assertEquals("patch", decoder.getType());
+		assertEquals(14, decoder.getSeq());
+		assertWorld(0, 330, 3, NOW);
+		assertArrayEquals(new int[]{301}, decoder.getRemoves());
+	}
+
+	@Test
+	public void deflatedBinaryPatchDecodes() throws Exception
+	{
+		ByteString frame = LocalScoutServer.encodeBinary(CrabScouterBinaryProtocol.OP_PATCH, 15,
+			Collections.singletonList(record(330, 3, NOW - 1)), Collections.singletonList(301), NOW);
+		decoder.decode(LocalScoutServer.deflate(frame).asByteBuffer());
+
+		assertEquals("patch", decoder.getType());
+		assertEquals(15, decoder.getSeq());
+		assertWorld(0, 330, 3, NOW - 1);
+		assertArrayEquals(new int[]{301}, decoder.getRemoves());
+		assertEquals(frame.size(), decoder.getInflatedSize());
+	}
+
+	@Test
+	public void deflatedJsonSnapshotDecodes() throws Exception
+	{
+		String text = LocalScoutServer.encodeJson("snapshot", 16,
+			Arrays.asList(record(420, 80, NOW - 3000), record(301, 100, NOW)), Collections.emptyList());
+		decoder.decode(LocalScoutServer.deflate(text).asByteBuffer());
+
+		assertEquals("snapshot", decoder.getType());
+		assertEquals(16, decoder.getSeq());
+		assertWorld(0, 420, 80, NOW - 3000);
+		assertWorld(1, 301, 100, NOW);
+		assertEquals(text.length(), decoder.getInflatedSize());
+	}
+
+	@Test
+	public void subscribeReadsBackInBothFormats()
+	{
+		CrabScouterSender.Message message = new CrabScouterSender.Message();
+		message.type = CrabScouterSender.Type.SUBSCRIBE;
+		message.filter = new WorldFilter(new int[]{5424, 4913}, new int[]{420, 301}, 12, 40);
+
+		JsonObject json = new JsonParser().parse(CrabScouterWebSocketClient.encodeJson(message).toString())
+			.getAsJsonObject();
+		assertEquals(message.filter, LocalScoutServer.readSubscribe(json));
+
+		ByteBuffer buf = CrabScouterWebSocketClient.encodeBinary(message).asByteBuffer();
+		assertEquals(CrabScouterBinaryProtocol.OP_SUBSCRIBE, buf.get());
+		assertEquals(message.filter, LocalScoutServer.readSubscribe(buf));
+		assertEquals(0, buf.remaining());
+	}
+
+	private void assertWorld(int i, int world, int health, long lastUpdate)
+	{
+		WorldBatch worlds = decoder.getWorlds();
+		assertEquals(world, worlds.getWorld(i));
+		assertEquals(4913, worlds.getChunk(i));
+		assertEquals(health, worlds.getHealth(i));
+		assertEquals(12, worlds.getTotalPlayers(i));
+		assertEquals(5, worlds.getAttackingPlayers(i));
+		assertEquals(health / 2, worlds.getDamageRate(i));
+		assertEquals(lastUpdate, worlds.getLastUpdate(i));
+	}
+
+	private static LocalScoutServer.WorldRecord record(int world, int health, long lastUpdate)
+	{
+		LocalScoutServer.WorldRecord record = new LocalScoutServer.WorldRecord();
+		record.world = world;
+		record.chunk = 4913;
+		record.health = health;
+		record.totalPlayers = 12;
+		record.attackingPlayers = 5;
+		record.damageRate = health / 2;
+		record.lastUpdate = lastUpdate;
+		return record;
+	}
+}
@@ -0,0 +1,97 @@
+package com.crabscouter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class PanelRefreshSchedulerTest
+{
+	// Refreshes at most every 200 ms
+	private static final int RATE = 5;
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private final AtomicInteger refreshes = new AtomicInteger();
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void firstRefreshIsImmediate() throws Exception
+	{
+		// A low rate would push a refresh seconds out if "never refreshed" were measured from nanoTime 0
+		PanelRefreshScheduler scheduler = new PanelRefreshScheduler(refreshes::incrementAndGet, () -> 1, executor);
+		scheduler.markDirty();
+		flushEdt();
+
+		assertEquals(1, refreshes.get());
+	}
+
+	@Test
+	public void burstCostsOneRefresh() throws Exception
+	{
+		PanelRefreshScheduler scheduler = new PanelRefreshScheduler(refreshes::incrementAndGet, () -> RATE, executor);
+
+		// Marked from the EDT so the refresh can't run part way through the burst
+		SwingUtilities.invokeAndWait(() ->
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				scheduler.markDirty();
+			}
+		});
+		flushEdt();
+
+		assertEquals(1, refreshes.get());
+	}
+
+	@Test
+	public void refreshesAreSpacedByRate() throws Exception
+	{
+		PanelRefreshScheduler scheduler = new PanelRefreshScheduler(refreshes::incrementAndGet, () -> RATE, executor);
+		scheduler.markDirty();
+		flushEdt();
+
+		scheduler.markDirty();
+		scheduler.markDirty();
+		flushEdt();
+		assertEquals(1, refreshes.get());
+
+		Thread.sleep(2 * TimeUnit.SECONDS.toMillis(1) / RATE);
+		flushEdt();
+		assertEquals(2, refreshes.get());
+	}
+
+	@Test
+	public void changeDuringRefreshIsNotLost() throws Exception
+	{
+		PanelRefreshScheduler[] scheduler = new PanelRefreshScheduler[1];
+		scheduler[0] = new PanelRefreshScheduler(() ->
+		{
+			if (refreshes.incrementAndGet() == 1)
+			{
+				scheduler[0].markDirty();
+			}
+		}, () -> RATE, executor);
+
+		scheduler[0].markDirty();
+		Thread.sleep(2 * TimeUnit.SECONDS.toMillis(1) / RATE);
+		flushEdt();
+
+		assertEquals(2, refreshes.get());
+	}
+
+	private static void flushEdt() throws Exception
+	{
+		SwingUtilities.invokeAndWait(() ->
+		{
+		});
+	}
+}
@@ -0,0 +1,132 @@
+package com.crabscouter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class PlayerTrackerTest
+{
+	// Region 4913
+	private static final WorldPoint IN_REGION = new WorldPoint(1230, 3150, 0);
+	// Region 4911
+	private static final WorldPoint OUT_OF_REGION = new WorldPoint(1230, 3020, 0);
+
+	private final PlayerTracker tracker = new PlayerTracker();
+	private final NPC crab = Fakes.npc(new Fakes.ActorState());
+
+	@Before
+	public void setUp()
+	{
+		tracker.reset(IN_REGION.getRegionID(), Collections.emptyList());
+		tracker.setCrab(crab);
+	}
+
+	@Test
+	public void resetCountsLoadedPlayersInRegion()
+	{
+		Fakes.ActorState attacker = state(IN_REGION);
+		attacker.interacting = crab;
+
+		tracker.reset(IN_REGION.getRegionID(), Arrays.asList(
+			Fakes.player(attacker), Fakes.player(state(IN_REGION)), Fakes.player(state(OUT_OF_REGION))));
+		tracker.setCrab(crab);
+
+		assertEquals(2, tracker.getTotalPlayers());
+		assertEquals(1, tracker.getAttackingPlayers());
+	}
+
+	@Test
+	public void eventsUpdateCounts()
+	{
+		Fakes.ActorState state = state(IN_REGION);
+		Player player = Fakes.player(state);
+
+		tracker.onPlayerSpawned(player);
+		tracker.onPlayerSpawned(Fakes.player(state(OUT_OF_REGION)));
+		assertEquals(1, tracker.getTotalPlayers());
+		assertEquals(0, tracker.getAttackingPlayers());
+
+		state.interacting = crab;
+		tracker.onInteractingChanged(player, crab);
+		assertEquals(1, tracker.getAttackingPlayers());
+
+		state.interacting = null;
+		tracker.onInteractingChanged(player, null);
+		assertEquals(1, tracker.getTotalPlayers());
+		assertEquals(0, tracker.getAttackingPlayers());
+
+		tracker.onPlayerDespawned(player);
+		assertEquals(0, tracker.getTotalPlayers());
+	}
+
+	@Test
+	public void targetChangeOutsideRegionDropsPlayer()
+	{
+		Fakes.ActorState state = state(IN_REGION);
+		Player player = Fakes.player(state);
+		tracker.onPlayerSpawned(player);
+
+		state.location = OUT_OF_REGION;
+		tracker.onInteractingChanged(player, null);
+
+		assertEquals(0, tracker.getTotalPlayers());
+	}
+
+	@Test
+	public void newCrabRecountsAttackers()
+	{
+		NPC other = Fakes.npc(new Fakes.ActorState());
+		Fakes.ActorState state = state(IN_REGION);
+		state.interacting = other;
+		tracker.onPlayerSpawned(Fakes.player(state));
+		assertEquals(0, tracker.getAttackingPlayers());
+
+		tracker.setCrab(other);
+		assertEquals(1, tracker.getAttackingPlayers());
+	}
+
+	@Test
+	public void resyncPicksUpSilentMovement()
+	{
+		Fakes.ActorState walkedOut = state(IN_REGION);
+		Player leaving = Fakes.player(walkedOut);
+		tracker.onPlayerSpawned(leaving);
+
+		// Neither player fires an event the tracker sees
+		walkedOut.location = OUT_OF_REGION;
+		Fakes.ActorState walkedIn = state(OUT_OF_REGION);
+		Player arriving = Fakes.player(walkedIn);
+		walkedIn.location = IN_REGION;
+		assertEquals(1, tracker.getTotalPlayers());
+
+		tracker.resync(Arrays.asList(leaving, arriving));
+		assertEquals(1, tracker.getTotalPlayers());
+
+		// The one counted is the arrival
+		tracker.onPlayerDespawned(arriving);
+		assertEquals(0, tracker.getTotalPlayers());
+	}
+
+	@Test
+	public void ignoresEventsWhenNotTracking()
+	{
+		tracker.clear();
+		Player player = Fakes.player(state(IN_REGION));
+		tracker.onPlayerSpawned(player);
+		tracker.onInteractingChanged(player, crab);
+
+		assertEquals(0, tracker.getTotalPlayers());
+	}
+
+	private static Fakes.ActorState state(WorldPoint location)
+	{
+		Fakes.ActorState state = new Fakes.ActorState();
+		state.location = location;
+		return state;
+	}
+}
@@ -0,0 +1,72 @@
+package com.crabscouter;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectPolicyTest
+{
+	private final ReconnectPolicy policy = new ReconnectPolicy();
+
+	@Test
+	public void delaysStayWithinBackoffBounds()
+	{
+		long previous = ReconnectPolicy.BASE_DELAY_MILLIS;
+		for (int i = 1; i < ReconnectPolicy.FAILURE_THRESHOLD; i++)
+		{
+			long delay = policy.nextDelayMillis();
+			assertTrue(delay >= ReconnectPolicy.BASE_DELAY_MILLIS);
+			assertTrue(delay <= Math.min(ReconnectPolicy.MAX_DELAY_MILLIS, previous * 3));
+			assertEquals(ReconnectPolicy.State.CLOSED, policy.getState());
+			previous = delay;
+		}
+	}
+
+	@Test
+	public void circuitOpensAfterThresholdAndProbesOnce()
+	{
+		for (int i = 1; i < ReconnectPolicy.FAILURE_THRESHOLD; i++)
+		{
+			policy.nextDelayMillis();
+		}
+
+		assertOpenDelay(policy.nextDelayMillis());
+		assertEquals(ReconnectPolicy.State.OPEN, policy.getState());
+
+		policy.onAttempt();
+		assertEquals(ReconnectPolicy.State.HALF_OPEN, policy.getState());
+
+		// A failed probe reopens the circuit straight away
+		assertOpenDelay(policy.nextDelayMillis());
+		assertEquals(ReconnectPolicy.State.OPEN, policy.getState());
+
+		policy.onAttempt();
+		policy.onSuccess();
+		assertEquals(ReconnectPolicy.State.CLOSED, policy.getState());
+		assertTrue(policy.nextDelayMillis() <= ReconnectPolicy.BASE_DELAY_MILLIS * 3);
+	}
+
+	@Test
+	public void retryAfterIsALowerBoundForOneAttempt()
+	{
+		policy.setRetryAfter(60_000);
+		long delay = policy.nextDelayMillis();
+		assertTrue(delay >= 60_000);
+		assertTrue(delay <= 66_000);
+
+		assertTrue(policy.nextDelayMillis() < 60_000);
+	}
+
+	@Test
+	public void retryAfterIsCapped()
+	{
+		policy.setRetryAfter(Long.MAX_VALUE / 2);
+		assertTrue(policy.nextDelayMillis() <= ReconnectPolicy.MAX_RETRY_AFTER_MILLIS * 11 / 10);
+	}
+
+	private static void assertOpenDelay(long delay)
+	{
+		assertTrue(delay >= ReconnectPolicy.OPEN_DURATION_MILLIS / 2);
+		assertTrue(delay <= ReconnectPolicy.OPEN_DURATION_MILLIS);
+	}
+}
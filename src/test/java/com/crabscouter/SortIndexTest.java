@@ -0,0 +1,116 @@
+package com.crabscouter;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SortIndexTest
+{
+	@Test
+	public void entriesOrderedByKeyThenSlot()
+	{
+		SortIndex index = new SortIndex();
+		index.insert(50, 7);
+		index.insert(20, 9);
+		index.insert(50, 3);
+		index.insert(20, 9);
+		index.insert(80, 1);
+
+		assertArrayEquals(new int[]{20, 50, 50, 80}, keys(index.toArray()));
+		assertArrayEquals(new int[]{9, 3, 7, 1}, slots(index.toArray()));
+
+		index.remove(50, 3);
+		index.remove(50, 4);
+		assertArrayEquals(new int[]{9, 7, 1}, slots(index.toArray()));
+	}
+
+	@Test
+	public void descendingKeepsTiesInWorldOrder()
+	{
+		WorldStore store = new WorldStore();
+		store.upsert(305, 4913, 50, 1, 0, 0, 1000);
+		store.upsert(302, 4913, 90, 1, 0, 0, 1000);
+		store.upsert(301, 4913, 50, 1, 0, 0, 1000);
+		store.upsert(304, 4913, 90, 1, 0, 0, 1000);
+		store.upsert(303, 4913, 70, 1, 0, 0, 1000);
+		store.publish();
+
+		WorldStore.Snapshot snapshot = store.snapshot();
+		assertArrayEquals(new int[]{302, 304, 303, 301, 305},
+			worlds(snapshot.freshWorlds(WorldStore.Order.HEALTH, false)));
+		assertArrayEquals(new int[]{301, 305, 303, 302, 304},
+			worlds(snapshot.freshWorlds(WorldStore.Order.HEALTH, true)));
+		assertArrayEquals(new int[]{305, 304, 303, 302, 301},
+			worlds(snapshot.freshWorlds(WorldStore.Order.WORLD, false)));
+
+		// Every world ties on players, so both directions are world order
+		assertArrayEquals(new int[]{301, 302, 303, 304, 305},
+			worlds(snapshot.freshWorlds(WorldStore.Order.PLAYERS, false)));
+	}
+
+	@Test
+	public void changedKeyMovesEntry()
+	{
+		WorldStore store = new WorldStore();
+		store.upsert(301, 4913, 50, 1, 0, 0, 1000);
+		store.upsert(302, 4913, 60, 1, 0, 0, 1000);
+		store.publish();
+		store.upsert(301, 4913, 70, 1, 0, 0, 2000);
+		store.publish();
+
+		List<WorldData> worlds = store.snapshot().freshWorlds(WorldStore.Order.HEALTH, false);
+		assertEquals(2, worlds.size());
+		assertArrayEquals(new int[]{301, 302}, worlds(worlds));
+	}
+
+	@Test
+	public void healthOrderFollowsTheClock()
+	{
+		WorldStore store = new WorldStore();
+		store.upsert(301, 4913, 60, 1, 0, 0, 1000);
+		// 1% a second from 80
+		store.upsert(302, 4913, 80, 1, 0, 100, 1000);
+		store.upsert(303, 4913, 70, 1, 0, 0, 1000);
+		store.publish();
+		WorldStore.Snapshot snapshot = store.snapshot();
+
+		assertArrayEquals(new int[]{302, 303, 301}, worlds(snapshot.freshWorlds(WorldStore.Order.HEALTH, false, 1000)));
+		// Same snapshot, no new reports: 302 has dropped to 65 and then to 50
+		assertArrayEquals(new int[]{303, 302, 301}, worlds(snapshot.freshWorlds(WorldStore.Order.HEALTH, false, 16_000)));
+		assertArrayEquals(new int[]{302, 301, 303}, worlds(snapshot.freshWorlds(WorldStore.Order.HEALTH, true, 31_000)));
+
+		// Other orders don't move
+		assertArrayEquals(new int[]{301, 302, 303}, worlds(snapshot.freshWorlds(WorldStore.Order.WORLD, true, 31_000)));
+	}
+
+	private static int[] keys(long[] entries)
+	{
+		int[] keys = new int[entries.length];
+		for (int i = 0; i < entries.length; i++)
+		{
+			keys[i] = SortIndex.key(entries[i]);
+		}
+		return keys;
+	}
+
+	private static int[] slots(long[] entries)
+	{
+		int[] slots = new int[entries.length];
+		for (int i = 0; i < entries.length; i++)
+		{
+			slots[i] = SortIndex.slot(entries[i]);
+		}
+		return slots;
+	}
+
+	private static int[] worlds(List<WorldData> worlds)
+	{
+		int[] result = new int[worlds.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = worlds.get(i).getWorld();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,108 @@
+package com.crabscouter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TargetRegistryTest
+{
+	@Test
+	public void bundledRegistryHasTheCrabAreas()
+	{
+		TargetRegistry registry = TargetRegistry.getDefault();
+
+		assertTrue(registry.isTargetId(14779));
+		assertTrue(registry.isScouted(4913));
+		assertTrue(registry.isScouted(4911));
+		assertTrue(registry.isScouted(5424));
+		assertEquals("North", registry.getAreaName(4913));
+		assertEquals("West", registry.getAreaName(4911));
+		assertEquals("East", registry.getAreaName(5424));
+	}
+
+	@Test
+	public void namePatternSkipsTheShell()
+	{
+		TargetRegistry registry = TargetRegistry.getDefault();
+
+		assertTrue(registry.matchesName("Gemstone Crab"));
+		assertTrue(registry.matchesName("gemstone crab"));
+		assertFalse(registry.matchesName("Gemstone crab shell"));
+		assertFalse(registry.matchesName("Crab"));
+	}
+
+	@Test
+	public void regionsAreFoundByAreaName()
+	{
+		TargetRegistry registry = TargetRegistry.getDefault();
+
+		assertArrayEquals(new int[]{5424}, registry.getRegions("east"));
+		assertEquals(0, registry.getRegions("Nowhere").length);
+	}
+
+	@Test
+	public void unknownRegionsAreNotScouted()
+	{
+		TargetRegistry registry = TargetRegistry.getDefault();
+
+		assertFalse(registry.isScouted(12850));
+		assertFalse(registry.isScouted(-1));
+		assertFalse(registry.isScouted(1 << 16));
+		assertEquals(TargetRegistry.UNKNOWN_AREA, registry.getAreaName(12850));
+	}
+
+	@Test
+	public void areaOrderFollowsNamesWithUnknownIncluded() throws Exception
+	{
+		TargetRegistry registry = load("{\"activities\":[{\"name\":\"Test\",\"npcIds\":[1],\"areas\":["
+			+ "{\"region\":100,\"name\":\"Zulu\"},{\"region\":200,\"name\":\"Alpha\"},"
+			+ "{\"region\":300,\"name\":\"Alpha\"}]}]}");
+
+		// Alpha < Unknown < Zulu
+		assertEquals(0, registry.getAreaOrder(200));
+		assertEquals(0, registry.getAreaOrder(300));
+		assertEquals(1, registry.getAreaOrder(400));
+		assertEquals(2, registry.getAreaOrder(100));
+	}
+
+	@Test
+	public void activitiesAreMerged() throws Exception
+	{
+		TargetRegistry registry = load("{\"version\":1,\"activities\":["
+			+ "{\"name\":\"One\",\"npcIds\":[1,2],\"areas\":[{\"region\":100,\"name\":\"A\"}]},"
+			+ "{\"name\":\"Two\",\"namePattern\":\"Boss.*\",\"areas\":[{\"region\":200,\"name\":\"B\"}]}]}");
+
+		assertTrue(registry.isTargetId(2));
+		assertFalse(registry.isTargetId(3));
+		assertTrue(registry.matchesName("Boss of the hill"));
+		assertTrue(registry.isScouted(100));
+		assertTrue(registry.isScouted(200));
+	}
+
+	@Test(expected = IOException.class)
+	public void duplicateRegionIsRejected() throws Exception
+	{
+		load("{\"activities\":[{\"areas\":[{\"region\":100,\"name\":\"A\"},{\"region\":100,\"name\":\"B\"}]}]}");
+	}
+
+	@Test(expected = IOException.class)
+	public void areaWithoutNameIsRejected() throws Exception
+	{
+		load("{\"activities\":[{\"areas\":[{\"region\":100}]}]}");
+	}
+
+	@Test(expected = IOException.class)
+	public void badNamePatternIsRejected() throws Exception
+	{
+		load("{\"activities\":[{\"namePattern\":\"(unclosed\"}]}");
+	}
+
+	private static TargetRegistry load(String json) throws IOException
+	{
+		return TargetRegistry.load(new StringReader(json));
+	}
+}
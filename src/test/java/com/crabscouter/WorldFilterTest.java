@@ -0,0 +1,80 @@
+package com.crabscouter;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorldFilterTest
+{
+	@Test
+	public void emptyFilterMatchesEverything()
+	{
+		assertTrue(WorldFilter.ALL.isAll());
+		assertTrue(WorldFilter.ALL.matches(301, 4913, 0, 500));
+		assertTrue(new WorldFilter(new int[0], new int[0], -5, -1).isAll());
+	}
+
+	@Test
+	public void everyConditionMustHold()
+	{
+		WorldFilter filter = new WorldFilter(new int[]{5424, 4913}, new int[0], 10, 50);
+
+		assertFalse(filter.isAll());
+		assertTrue(filter.matches(301, 4913, 50, 10));
+		assertFalse(filter.matches(301, 4911, 50, 10));
+		assertFalse(filter.matches(301, 5424, 49, 10));
+		assertFalse(filter.matches(301, 5424, 50, 11));
+	}
+
+	@Test
+	public void worldListIsSortedCopy()
+	{
+		int[] worlds = {420, 301, 330};
+		WorldFilter filter = new WorldFilter(new int[0], worlds, 0, 0);
+		worlds[0] = 302;
+
+		assertArrayEquals(new int[]{301, 330, 420}, filter.getWorlds());
+		assertTrue(filter.matches(420, 4913, 0, 0));
+		assertFalse(filter.matches(302, 4913, 0, 0));
+	}
+
+	@Test
+	public void equalFiltersCompareEqual()
+	{
+		WorldFilter a = new WorldFilter(new int[]{4913, 5424}, new int[]{301}, 10, 0);
+		WorldFilter b = new WorldFilter(new int[]{5424, 4913}, new int[]{301}, 10, 0);
+
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertFalse(a.equals(new WorldFilter(new int[]{4913, 5424}, new int[]{301}, 10, 1)));
+	}
+
+	@Test
+	public void fromConfigResolvesChunkNames()
+	{
+		Map<String, Object> settings = new HashMap<>();
+		settings.put("chunkFilter", " east, Nowhere ,NORTH ");
+		settings.put("worldFilter", "301, w302, 420");
+		settings.put("maxPlayers", 15);
+		CrabScouterConfig config = Fakes.fake(CrabScouterConfig.class, (method, args) -> settings.get(method));
+
+		WorldFilter filter = WorldFilter.fromConfig(config, TargetRegistry.getDefault());
+
+		assertArrayEquals(new int[]{4913, 5424}, filter.getChunks());
+		assertArrayEquals(new int[]{301, 420}, filter.getWorlds());
+		assertEquals(15, filter.getMaxPlayers());
+		assertEquals(0, filter.getMinHealth());
+	}
+
+	@Test
+	public void blankConfigIsAll()
+	{
+		CrabScouterConfig config = Fakes.fake(CrabScouterConfig.class, (method, args) -> null);
+
+		assertTrue(WorldFilter.fromConfig(config, TargetRegistry.getDefault()).isAll());
+	}
+}
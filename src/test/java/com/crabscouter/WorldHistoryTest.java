@@ -0,0 +1,144 @@
+package com.crabscouter;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WorldHistoryTest
+{
+	private static final long NOW = 1_700_000_000_000L;
+
+	private final WorldStore store = new WorldStore();
+	private final WorldHistory history = new WorldHistory();
+
+	@Test
+	public void downsamplesIntoBuckets()
+	{
+		// Two samples in the first second, none in the second, one in the third
+		sample(301, 90, NOW);
+		sample(301, 80, NOW + 500);
+		sample(301, 60, NOW + 2500);
+
+		int[] out = new int[3];
+		assertEquals(2, history.downsample(301, WorldHistory.Field.HEALTH, NOW, NOW + 3000, out));
+		assertArrayEquals(new int[]{85, -1, 60}, out);
+		assertEquals(NOW + 2500, history.getLatest(301));
+	}
+
+	@Test
+	public void windowExcludesItsEnd()
+	{
+		sample(301, 90, NOW);
+		sample(301, 50, NOW + 1000);
+
+		int[] out = new int[1];
+		assertEquals(1, history.downsample(301, WorldHistory.Field.HEALTH, NOW, NOW + 1000, out));
+		assertArrayEquals(new int[]{90}, out);
+	}
+
+	@Test
+	public void eachFieldIsKept()
+	{
+		store.upsert(301, 4913, 70, 12, 5, 0, NOW);
+		publish();
+
+		int[] out = new int[1];
+		history.downsample(301, WorldHistory.Field.TOTAL_PLAYERS, NOW, NOW + 1, out);
+		assertEquals(12, out[0]);
+		history.downsample(301, WorldHistory.Field.ATTACKING_PLAYERS, NOW, NOW + 1, out);
+		assertEquals(5, out[0]);
+	}
+
+	@Test
+	public void onlyChangedWorldsAreSampled()
+	{
+		sample(301, 90, NOW);
+		sample(302, 80, NOW);
+		sample(302, 70, NOW + 1000);
+
+		int[] out = new int[2];
+		assertEquals(1, history.downsample(301, WorldHistory.Field.HEALTH, NOW, NOW + 2000, out));
+		assertEquals(2, history.downsample(302, WorldHistory.Field.HEALTH, NOW, NOW + 2000, out));
+	}
+
+	@Test
+	public void olderSamplesAreIgnored()
+	{
+		sample(301, 90, NOW + 1000);
+		sample(301, 20, NOW);
+
+		int[] out = new int[2];
+		assertEquals(1, history.downsample(301, WorldHistory.Field.HEALTH, NOW, NOW + 2000, out));
+		assertArrayEquals(new int[]{-1, 90}, out);
+	}
+
+	@Test
+	public void restoredAndStaleWorldsAreSkipped()
+	{
+		WorldBatch saved = new WorldBatch();
+		saved.add(301, 4913, 90, 5, 2, 0, NOW);
+		store.restore(saved);
+		publish();
+		assertEquals(0, history.getLatest(301));
+
+		sample(302, 80, NOW);
+		store.expire(NOW + WorldStore.FRESH_MILLIS);
+		publish();
+		assertEquals(NOW, history.getLatest(302));
+	}
+
+	@Test
+	public void fullRingOverwritesOldest()
+	{
+		int samples = WorldHistory.SAMPLES_PER_WORLD + 10;
+		for (int k = 0; k < samples; k++)
+		{
+			sample(301, k % 100, NOW + k * 1000L);
+		}
+
+		int[] out = new int[samples];
+		long end = NOW + samples * 1000L;
+		assertEquals(WorldHistory.SAMPLES_PER_WORLD, history.downsample(301, WorldHistory.Field.HEALTH, NOW, end, out));
+		assertEquals(-1, out[9]);
+		assertEquals(10, out[10]);
+		assertEquals(end - 1000, history.getLatest(301));
+	}
+
+	@Test
+	public void outOfRangeWorldsHaveNoHistory()
+	{
+		int[] out = new int[2];
+		assertEquals(0, history.downsample(WorldStore.MIN_WORLD - 1, WorldHistory.Field.HEALTH, NOW, NOW + 1, out));
+		assertArrayEquals(new int[]{-1, -1}, out);
+		assertEquals(0, history.getLatest(WorldStore.MIN_WORLD + WorldStore.CAPACITY));
+	}
+
+	@Test
+	public void feedRecordsEveryPublishedSnapshot()
+	{
+		WorldFeed feed = new WorldFeed();
+		WorldBatch worlds = new WorldBatch();
+		worlds.add(301, 4913, 90, 5, 2, 0, NOW);
+		feed.applySnapshot(worlds);
+
+		WorldBatch patch = new WorldBatch();
+		patch.add(301, 4913, 70, 5, 2, 0, NOW + 1000);
+		feed.applyPatch(patch, new int[0]);
+
+		int[] out = new int[2];
+		assertEquals(2, feed.getHistory().downsample(301, WorldHistory.Field.HEALTH, NOW, NOW + 2000, out));
+		assertArrayEquals(new int[]{90, 70}, out);
+	}
+
+	private void sample(int world, int health, long lastUpdate)
+	{
+		store.upsert(world, 4913, health, 5, 2, 0, lastUpdate);
+		publish();
+	}
+
+	private void publish()
+	{
+		store.publish();
+		history.record(store.snapshot());
+	}
+}
@@ -0,0 +1,262 @@
+package com.crabscouter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.World;
+import net.runelite.api.widgets.ComponentID;
+import net.runelite.api.widgets.Widget;
+import net.runelite.client.callback.ClientThread;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorldHopperTest
+{
+	private static final int SWITCHER_GROUP = ComponentID.WORLD_SWITCHER_WORLD_LIST >> 16;
+
+	private final Widget switcher = Fakes.fake(Widget.class, (method, args) -> null);
+	private final List<Integer> hops = new ArrayList<>();
+	private boolean switcherOpen;
+	private int opens;
+	private int currentWorld = 301;
+	private long now;
+
+	private final Client client = Fakes.fake(Client.class, (method, args) ->
+	{
+		switch (method)
+		{
+			case "getWidget":
+				return switcherOpen && (int) args[0] == ComponentID.WORLD_SWITCHER_WORLD_LIST ? switcher : null;
+			case "openWorldHopper":
+				opens++;
+				return null;
+			case "hopToWorld":
+				hops.add(((World) args[0]).getId());
+				return null;
+			case "getWorld":
+				return currentWorld;
+			case "createWorld":
+				return Fakes.world();
+			default:
+				return null;
+		}
+	});
+
+	// Runs queued work straight away, as if the client thread were already draining its queue
+	private final ClientThread clientThread = new ClientThread()
+	{
+		@Override
+		public void invokeLater(Runnable runnable)
+		{
+			runnable.run();
+		}
+	};
+
+	private final CrabScouterMetrics metrics = new CrabScouterMetrics();
+	private final HopTargetCache targets = new HopTargetCache(client);
+	private final WorldStore store = new WorldStore();
+	private WorldHopper hopper;
+
+	@Before
+	public void setUp()
+	{
+		hopper = new WorldHopper(client, clientThread, metrics, targets)
+		{
+			@Override
+			long nanoTime()
+			{
+				return now;
+			}
+		};
+		buildTargets(302, 303, 304);
+	}
+
+	@Test
+	public void hopsOnceTheSwitcherLoads()
+	{
+		assertTrue(hopper.request(302, now));
+		assertEquals(WorldHopper.State.OPENING_SWITCHER, hopper.getState());
+		assertEquals(1, opens);
+		assertTrue(hops.isEmpty());
+
+		// Idle ticks before the interface loads don't hop
+		hopper.onGameTick();
+		assertTrue(hops.isEmpty());
+
+		switcherOpen = true;
+		hopper.onWidgetLoaded(SWITCHER_GROUP);
+		assertEquals(WorldHopper.State.HOPPING, hopper.getState());
+		assertEquals(1, hops.size());
+		assertEquals(302, (int) hops.get(0));
+
+		advance(250);
+		hopper.onGameStateChanged(GameState.HOPPING);
+		assertEquals(WorldHopper.State.IDLE, hopper.getState());
+		assertEquals(1, metrics.hopLatency.getCount());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(250), metrics.hopLatency.getMax(), 1_000_000);
+	}
+
+	@Test
+	public void openSwitcherHopsStraightAway()
+	{
+		switcherOpen = true;
+		hopper.request(303, now);
+
+		assertEquals(0, opens);
+		assertEquals(1, hops.size());
+		assertEquals(WorldHopper.State.HOPPING, hopper.getState());
+	}
+
+	@Test
+	public void clickWhileOpeningRetargets()
+	{
+		hopper.request(302, now);
+		hopper.request(303, now);
+		assertEquals(1, opens);
+
+		switcherOpen = true;
+		hopper.onWidgetLoaded(SWITCHER_GROUP);
+		assertEquals(1, hops.size());
+		assertEquals(303, (int) hops.get(0));
+	}
+
+	@Test
+	public void clickAfterTheHopWasSentWaitsForLogin()
+	{
+		switcherOpen = true;
+		hopper.request(302, now);
+		hopper.request(303, now);
+		assertEquals(1, hops.size());
+
+		hopper.onGameStateChanged(GameState.HOPPING);
+		currentWorld = 302;
+		hopper.onGameStateChanged(GameState.LOGGED_IN);
+
+		assertEquals(2, hops.size());
+		assertEquals(303, (int) hops.get(1));
+	}
+
+	@Test
+	public void openingIsRetriedThenAbandoned()
+	{
+		hopper.request(302, now);
+
+		for (int i = 0; i < 5; i++)
+		{
+			advance(1200);
+			hopper.onGameTick();
+		}
+
+		assertEquals(3, opens);
+		assertEquals(WorldHopper.State.IDLE, hopper.getState());
+		assertTrue(hops.isEmpty());
+	}
+
+	@Test
+	public void hopThatNeverStartsIsAbandoned()
+	{
+		switcherOpen = true;
+		hopper.request(302, now);
+
+		advance(9_999);
+		hopper.onGameTick();
+		assertEquals(WorldHopper.State.HOPPING, hopper.getState());
+
+		advance(1);
+		hopper.onGameTick();
+		assertEquals(WorldHopper.State.IDLE, hopper.getState());
+	}
+
+	@Test
+	public void worldWithoutTargetHopsWhenOneArrives()
+	{
+		assertFalse(hopper.request(330, now));
+		assertEquals(0, opens);
+
+		advance(4_000);
+		buildTargets(302, 330);
+		hopper.onTargetsRebuilt();
+
+		assertEquals(1, opens);
+		assertEquals(WorldHopper.State.OPENING_SWITCHER, hopper.getState());
+	}
+
+	@Test
+	public void worldWithoutTargetIsDroppedAfterTheDeadline()
+	{
+		hopper.request(330, now);
+
+		advance(5_000);
+		hopper.onGameTick();
+		buildTargets(302, 330);
+		hopper.onTargetsRebuilt();
+
+		assertEquals(0, opens);
+		assertEquals(WorldHopper.State.IDLE, hopper.getState());
+	}
+
+	@Test
+	public void anyHopDropsAWorldWaitingForItsTarget()
+	{
+		hopper.request(330, now);
+
+		// A manual hop through the switcher
+		hopper.onGameStateChanged(GameState.HOPPING);
+		buildTargets(302, 330);
+		hopper.onTargetsRebuilt();
+
+		assertEquals(0, opens);
+	}
+
+	@Test
+	public void newerClickDropsAWorldWaitingForItsTarget()
+	{
+		hopper.request(330, now);
+		switcherOpen = true;
+		hopper.request(302, now);
+		hopper.onGameStateChanged(GameState.HOPPING);
+
+		buildTargets(302, 330);
+		hopper.onTargetsRebuilt();
+
+		assertEquals(1, hops.size());
+		assertEquals(302, (int) hops.get(0));
+	}
+
+	@Test
+	public void logoutForgetsEverything()
+	{
+		switcherOpen = true;
+		hopper.request(302, now);
+		hopper.request(303, now);
+		hopper.onGameStateChanged(GameState.LOGIN_SCREEN);
+		assertEquals(WorldHopper.State.IDLE, hopper.getState());
+
+		hopper.onGameStateChanged(GameState.LOGGED_IN);
+		assertEquals(1, hops.size());
+	}
+
+	private void advance(long millis)
+	{
+		now += TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	private void buildTargets(int... worlds)
+	{
+		WorldBatch batch = new WorldBatch();
+		for (int world : worlds)
+		{
+			batch.add(world, 4913, 80, 5, 2, 0, 1000);
+		}
+		store.beginSnapshot();
+		store.upsertAll(batch);
+		store.endSnapshot();
+		store.publish();
+		targets.rebuild(Fakes.worldList(worlds), store.snapshot());
+	}
+}
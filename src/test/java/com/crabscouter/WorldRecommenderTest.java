@@ -0,0 +1,130 @@
+package com.crabscouter;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WorldRecommenderTest
+{
+	private static final long NOW = 1_700_000_000_000L;
+
+	private final WorldStore store = new WorldStore();
+	private final WorldRecommender recommender = new WorldRecommender();
+
+	@Before
+	public void setUp()
+	{
+		// Health only, so the expected order is plain to read
+		recommender.setWeights(1, 0, 0);
+		store.upsert(301, 4913, 40, 5, 2, 0, NOW);
+		store.upsert(302, 4913, 90, 5, 2, 0, NOW);
+		store.upsert(303, 4911, 70, 5, 2, 0, NOW);
+		store.upsert(304, 5424, 20, 5, 2, 0, NOW);
+		publish(NOW);
+	}
+
+	@Test
+	public void topIsBestFirst()
+	{
+		assertArrayEquals(new int[]{302, 303, 301, 304}, recommender.top(10));
+		assertArrayEquals(new int[]{302, 303}, recommender.top(2));
+		assertEquals(302, recommender.best(-1));
+		assertEquals(303, recommender.best(302));
+	}
+
+	@Test
+	public void incrementalUpdatesReorderHeap()
+	{
+		store.upsert(304, 5424, 95, 5, 2, 0, NOW + 1000);
+		publish(NOW + 1000);
+		assertArrayEquals(new int[]{304, 302, 303, 301}, recommender.top(4));
+
+		store.upsert(302, 4913, 10, 5, 2, 0, NOW + 1000);
+		publish(NOW + 1000);
+		assertArrayEquals(new int[]{304, 303, 301, 302}, recommender.top(4));
+
+		store.remove(303);
+		store.upsert(305, 4913, 50, 5, 2, 0, NOW + 1000);
+		publish(NOW + 1000);
+		assertArrayEquals(new int[]{304, 305, 301, 302}, recommender.top(4));
+	}
+
+	@Test
+	public void missedSnapshotRebuilds()
+	{
+		store.upsert(301, 4913, 99, 5, 2, 0, NOW + 1000);
+		store.publish();
+		store.remove(302);
+		publish(NOW + 1000);
+		assertArrayEquals(new int[]{301, 303, 304}, recommender.top(4));
+	}
+
+	@Test
+	public void staleWorldsAreDropped()
+	{
+		store.upsert(303, 4911, 70, 5, 2, 0, NOW + 60_000);
+		publish(NOW + 60_000);
+		store.expire(NOW + WorldStore.FRESH_MILLIS);
+		publish(NOW + WorldStore.FRESH_MILLIS);
+		assertArrayEquals(new int[]{303}, recommender.top(4));
+		assertEquals(-1, recommender.best(303));
+	}
+
+	@Test
+	public void scoresEstimatedHealth()
+	{
+		// 95% reported, but losing 5% a second, so by the time it's ranked it's behind 302
+		store.upsert(305, 4913, 95, 5, 2, 500, NOW);
+		publish(NOW + 2000);
+		assertArrayEquals(new int[]{302, 305, 303, 301}, recommender.top(4));
+	}
+
+	@Test
+	public void extrapolatingWorldsAreReRankedAsTimePasses()
+	{
+		store.upsert(305, 4913, 95, 5, 2, 500, NOW);
+		publish(NOW);
+		assertEquals(305, recommender.best(-1));
+
+		// No new snapshot, only the clock moves
+		recommender.update(store.snapshot(), NOW + 2000);
+		assertArrayEquals(new int[]{302, 305, 303}, recommender.top(3));
+
+		recommender.update(store.snapshot(), NOW + 12_000);
+		assertArrayEquals(new int[]{302, 303, 301, 305, 304}, recommender.top(5));
+	}
+
+	@Test
+	public void filteredWorldsAreDropped()
+	{
+		recommender.setFilter(new WorldFilter(new int[]{4913}, new int[0], 0, 0));
+		recommender.update(store.snapshot(), NOW);
+		assertArrayEquals(new int[]{302, 301}, recommender.top(4));
+
+		recommender.setFilter(WorldFilter.ALL);
+		recommender.update(store.snapshot(), NOW);
+		assertArrayEquals(new int[]{302, 303, 301, 304}, recommender.top(4));
+	}
+
+	@Test
+	public void crowdAndFreshnessCount()
+	{
+		recommender.setWeights(0, 1, 0);
+		store.upsert(302, 4913, 90, 30, 15, 0, NOW);
+		store.upsert(303, 4911, 70, 5, 0, 0, NOW);
+		publish(NOW);
+		assertEquals(303, recommender.best(-1));
+
+		recommender.setWeights(0, 0, 1);
+		store.upsert(304, 5424, 20, 5, 2, 0, NOW + 5000);
+		publish(NOW + 5000);
+		assertEquals(304, recommender.best(-1));
+	}
+
+	private void publish(long now)
+	{
+		store.publish();
+		recommender.update(store.snapshot(), now);
+	}
+}
@@ -0,0 +1,159 @@
+package com.crabscouter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorldStoreFileTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws Exception
+	{
+		WorldStore store = new WorldStore();
+		store.upsert(301, 4913, 90, 12, 4, 150, 1_700_000_000_000L);
+		store.upsert(811, 5424, 0, 300, 200, 1, 1_700_000_123_456L);
+		store.publish();
+
+		WorldStoreFile file = new WorldStoreFile(new File(folder.getRoot(), "sub/worlds.bin"));
+		file.write(store.snapshot());
+
+		WorldBatch batch = new WorldBatch();
+		assertTrue(file.read(batch));
+		assertEquals(2, batch.size());
+		assertWorld(batch, 0, 301, 4913, 90, 12, 4, 150, 1_700_000_000_000L);
+		assertWorld(batch, 1, 811, 5424, 0, 300, 200, 1, 1_700_000_123_456L);
+
+		// Overwriting replaces the previous contents
+		store.remove(301);
+		store.publish();
+		file.write(store.snapshot());
+		assertTrue(file.read(batch));
+		assertEquals(1, batch.size());
+		assertEquals(811, batch.getWorld(0));
+	}
+
+	@Test
+	public void missingFileReadsEmpty() throws Exception
+	{
+		WorldBatch batch = new WorldBatch();
+		batch.add(301, 4913, 90, 12, 4, 150, 1);
+		assertFalse(new WorldStoreFile(new File(folder.getRoot(), "missing.bin")).read(batch));
+		assertEquals(0, batch.size());
+	}
+
+	@Test
+	public void foreignFileReadsEmpty() throws Exception
+	{
+		File foreign = folder.newFile("worlds.bin");
+		Files.write(foreign.toPath(), "not a world snapshot at all".getBytes());
+		assertFalse(new WorldStoreFile(foreign).read(new WorldBatch()));
+	}
+
+	@Test
+	public void truncatedFileReadsEmpty() throws Exception
+	{
+		WorldStore store = new WorldStore();
+		store.upsert(301, 4913, 90, 12, 4, 150, 1);
+		store.publish();
+
+		File target = new File(folder.getRoot(), "worlds.bin");
+		new WorldStoreFile(target).write(store.snapshot());
+		byte[] bytes = Files.readAllBytes(target.toPath());
+		Files.write(target.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+		assertFalse(new WorldStoreFile(target).read(new WorldBatch()));
+	}
+
+	@Test
+	public void restoredWorldsLastUntilTheFirstSnapshot() throws Exception
+	{
+		WorldStore saved = new WorldStore();
+		saved.upsert(301, 4913, 90, 12, 4, 150, 1);
+		saved.upsert(302, 4913, 80, 12, 4, 150, 1);
+		saved.publish();
+		File target = new File(folder.getRoot(), "worlds.bin");
+		new WorldStoreFile(target).write(saved.snapshot());
+
+		WorldFeed feed = new WorldFeed();
+		WorldBatch live = new WorldBatch();
+		live.add(302, 4911, 70, 3, 1, 50, 2);
+		feed.applyPatch(live, new int[0]);
+
+		feed.persistTo(new WorldStoreFile(target), Runnable::run);
+		assertTrue(feed.restore());
+
+		// Restored worlds don't extrapolate and never overwrite what the server already sent
+		WorldStore.Snapshot snapshot = feed.getStore().snapshot();
+		assertTrue(snapshot.get(301).isRestored());
+		assertEquals(0, snapshot.get(301).getDamageRate());
+		assertFalse(snapshot.get(302).isRestored());
+		assertEquals(70, snapshot.get(302).getHealth());
+
+		// The same values confirmed by the server still count as a change
+		WorldBatch confirmed = new WorldBatch();
+		confirmed.add(301, 4913, 90, 12, 4, 0, 1);
+		assertTrue(feed.applySnapshot(confirmed));
+		assertFalse(feed.getStore().snapshot().get(301).isRestored());
+		assertEquals(1, feed.getStore().snapshot().size());
+	}
+
+	@Test
+	public void feedSavesOnlyOnceGivenAFile() throws Exception
+	{
+		File target = new File(folder.getRoot(), "worlds.bin");
+		List<Runnable> saves = new ArrayList<>();
+		WorldFeed feed = new WorldFeed();
+
+		for (int i = 0; i < 60; i++)
+		{
+			feed.applyPatch(patch(301, i), new int[0]);
+		}
+		assertFalse(feed.restore());
+
+		feed.persistTo(new WorldStoreFile(target), saves::add);
+		for (int i = 0; i < 49; i++)
+		{
+			feed.applyPatch(patch(301, i), new int[0]);
+		}
+		// Unchanged updates don't count
+		feed.applyPatch(patch(301, 48), new int[0]);
+		assertTrue(saves.isEmpty());
+
+		feed.applyPatch(patch(301, 49), new int[0]);
+		assertEquals(1, saves.size());
+		saves.get(0).run();
+
+		WorldBatch batch = new WorldBatch();
+		assertTrue(new WorldStoreFile(target).read(batch));
+		assertEquals(49, batch.getHealth(0));
+	}
+
+	private static WorldBatch patch(int world, int health)
+	{
+		WorldBatch batch = new WorldBatch();
+		batch.add(world, 4913, health, 12, 4, 0, 1);
+		return batch;
+	}
+
+	private static void assertWorld(WorldBatch batch, int i, int world, int chunk, int health, int total,
+		int attacking, int damageRate, long lastUpdate)
+	{
+		assertEquals(world, batch.getWorld(i));
+		assertEquals(chunk, batch.getChunk(i));
+		assertEquals(health, batch.getHealth(i));
+		assertEquals(total, batch.getTotalPlayers(i));
+		assertEquals(attacking, batch.getAttackingPlayers(i));
+		assertEquals(damageRate, batch.getDamageRate(i));
+		assertEquals(lastUpdate, batch.getLastUpdate(i));
+	}
+}
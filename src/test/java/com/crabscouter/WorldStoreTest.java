@@ -0,0 +1,200 @@
+package com.crabscouter;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WorldStoreTest
+{
+	private static final long NOW = 1_700_000_000_000L;
+
+	private final WorldFeed feed = new WorldFeed();
+	private final WorldStore store = feed.getStore();
+
+	@Test
+	public void snapshotReplacesWorldSet()
+	{
+		WorldBatch first = new WorldBatch();
+		first.add(301, 4913, 90, 5, 2, 0, NOW);
+		first.add(302, 4911, 80, 6, 3, 0, NOW);
+		assertTrue(feed.applySnapshot(first));
+		assertEquals(2, store.snapshot().size());
+
+		WorldBatch second = new WorldBatch();
+		second.add(302, 4911, 80, 6, 3, 0, NOW);
+		second.add(303, 5424, 70, 7, 4, 0, NOW);
+		assertTrue(feed.applySnapshot(second));
+
+		WorldStore.Snapshot snapshot = store.snapshot();
+		assertEquals(2, snapshot.size());
+		assertFalse(snapshot.contains(301));
+		assertTrue(snapshot.contains(302));
+		assertTrue(snapshot.contains(303));
+
+		// The same snapshot again changes nothing and publishes no new version
+		long version = snapshot.getVersion();
+		assertFalse(feed.applySnapshot(second));
+		assertEquals(version, store.snapshot().getVersion());
+	}
+
+	@Test
+	public void patchUpsertsAndRemoves()
+	{
+		WorldBatch worlds = new WorldBatch();
+		worlds.add(301, 4913, 90, 5, 2, 0, NOW);
+		worlds.add(302, 4911, 80, 6, 3, 0, NOW);
+		feed.applySnapshot(worlds);
+		WorldStore.Snapshot before = store.snapshot();
+
+		WorldBatch upserts = new WorldBatch();
+		upserts.add(301, 4913, 85, 6, 2, 0, NOW + 1000);
+		assertTrue(feed.applyPatch(upserts, new int[]{302, 303}));
+
+		// One message is one published version
+		WorldStore.Snapshot after = store.snapshot();
+		assertEquals(before.getVersion() + 1, after.getVersion());
+		assertEquals(1, after.size());
+		assertNull(after.get(302));
+
+		WorldData world = after.get(301);
+		assertEquals(85, world.getHealth());
+		assertEquals(6, world.getTotalPlayers());
+		assertEquals(NOW + 1000, world.getLastUpdate());
+
+		// Published snapshots are immutable
+		assertEquals(90, before.get(301).getHealth());
+		assertTrue(before.contains(302));
+	}
+
+	@Test
+	public void unchangedUpsertIsIgnored()
+	{
+		assertTrue(store.upsert(301, 4913, 90, 5, 2, 0, NOW));
+		assertFalse(store.upsert(301, 4913, 90, 5, 2, 0, NOW));
+		assertTrue(store.remove(301));
+		assertFalse(store.remove(301));
+	}
+
+	@Test
+	public void valuesAreClamped()
+	{
+		assertFalse(store.upsert(WorldStore.MIN_WORLD - 1, 4913, 90, 5, 2, 0, NOW));
+		assertFalse(store.upsert(WorldStore.MIN_WORLD + WorldStore.CAPACITY, 4913, 90, 5, 2, 0, NOW));
+
+		store.upsert(301, 4913, 150, -3, 100_000, 100_000, NOW);
+		store.upsert(302, 4913, 90, 5, 2, -1, NOW);
+		store.publish();
+		WorldData world = store.snapshot().get(301);
+		assertEquals(100, world.getHealth());
+		assertEquals(0, world.getTotalPlayers());
+		assertEquals(Short.MAX_VALUE, world.getAttackingPlayers());
+		assertEquals(HealthPredictor.MAX_DAMAGE_RATE, world.getDamageRate());
+		assertEquals(0, store.snapshot().get(302).getDamageRate());
+	}
+
+	@Test
+	public void damageRateExtrapolatesHealth()
+	{
+		store.upsert(301, 4913, 90, 5, 2, 0, NOW);
+		store.publish();
+		assertFalse(store.snapshot().isExtrapolating());
+		assertEquals(90, store.snapshot().get(301).getEstimatedHealth(NOW + 10_000));
+
+		store.upsert(301, 4913, 90, 5, 2, 100, NOW);
+		store.publish();
+		assertTrue(store.snapshot().isExtrapolating());
+		assertEquals(80, store.snapshot().get(301).getEstimatedHealth(NOW + 10_000));
+	}
+
+	@Test
+	public void storeTickReRanksExtrapolatedWorlds()
+	{
+		feed.setWeights(1, 0, 0);
+		WorldBatch worlds = new WorldBatch();
+		worlds.add(301, 4913, 95, 5, 2, 500, NOW);
+		worlds.add(302, 4913, 90, 5, 2, 0, NOW);
+		feed.applySnapshot(worlds);
+
+		assertTrue(feed.tick(NOW));
+		assertEquals(302, feed.best(301));
+		assertEquals(301, feed.best(-1));
+
+		// Nothing arrives, but 301 is down to 85 by now
+		assertTrue(feed.tick(NOW + 2000));
+		assertEquals(302, feed.best(-1));
+	}
+
+	@Test
+	public void worldsExpireAfterFreshWindow()
+	{
+		store.upsert(301, 4913, 90, 5, 2, 0, NOW);
+		store.upsert(302, 4913, 80, 5, 2, 0, NOW + 30_000);
+		store.publish();
+
+		assertFalse(store.expire(NOW + WorldStore.FRESH_MILLIS - 1));
+		assertTrue(store.expire(NOW + WorldStore.FRESH_MILLIS));
+		store.publish();
+
+		WorldStore.Snapshot snapshot = store.snapshot();
+		assertFalse(snapshot.get(301).isFresh());
+		assertTrue(snapshot.get(302).isFresh());
+		assertEquals(1, snapshot.freshWorlds(WorldStore.Order.WORLD, true).size());
+
+		// A newer update makes the world fresh again and reschedules its expiry
+		store.upsert(301, 4913, 85, 5, 2, 0, NOW + 60_000);
+		store.publish();
+		assertTrue(store.snapshot().get(301).isFresh());
+		assertTrue(store.expire(NOW + 30_000 + WorldStore.FRESH_MILLIS));
+		assertFalse(store.expire(NOW + 60_000 + WorldStore.FRESH_MILLIS - 1));
+		assertTrue(store.expire(NOW + 60_000 + WorldStore.FRESH_MILLIS));
+	}
+
+	@Test
+	public void worldUpdatedMidSecondExpiresWithinASecond()
+	{
+		store.upsert(301, 4913, 90, 5, 2, 0, NOW + 500);
+		store.publish();
+
+		// Ticking just before the deadline must not use up the world's slot for a whole turn of the wheel
+		assertFalse(store.expire(NOW + 500 + WorldStore.FRESH_MILLIS - 1));
+		assertTrue(store.expire(NOW + 1_000 + WorldStore.FRESH_MILLIS));
+	}
+
+	@Test
+	public void restoredWorldsNeverExpire()
+	{
+		WorldBatch saved = new WorldBatch();
+		saved.add(301, 4913, 90, 5, 2, 50, NOW);
+		assertTrue(store.restore(saved));
+		store.publish();
+
+		WorldData world = store.snapshot().get(301);
+		assertTrue(world.isRestored());
+		assertEquals(0, world.getDamageRate());
+		assertFalse(store.expire(NOW + 10 * WorldStore.FRESH_MILLIS));
+
+		// The live feed confirms it with the same values
+		assertTrue(store.upsert(301, 4913, 90, 5, 2, 0, NOW));
+		store.publish();
+		assertFalse(store.snapshot().get(301).isRestored());
+	}
+
+	@Test
+	public void worldsAreListedInWorldOrder()
+	{
+		// Across bitset words, out of insertion order
+		store.upsert(500, 4913, 90, 5, 2, 0, NOW);
+		store.upsert(301, 4913, 90, 5, 2, 0, NOW);
+		store.upsert(364, 4913, 90, 5, 2, 0, NOW);
+		store.publish();
+
+		List<WorldData> worlds = store.snapshot().worlds();
+		assertEquals(3, worlds.size());
+		assertEquals(301, worlds.get(0).getWorld());
+		assertEquals(364, worlds.get(1).getWorld());
+		assertEquals(500, worlds.get(2).getWorld());
+	}
+}